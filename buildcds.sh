@@ -0,0 +1,20 @@
+# Creates a class data sharing (AppCDS) archive for the command line solver.
+# The JVM maps the classes of the archive into memory at startup instead of
+# loading and verifying them from the class path, which shortens short runs
+# like "Starter <gameID>". The archive is recorded while the warm-up puzzles
+# are solved. Requires Java 13 or newer.
+#
+# run this script in the root folder of the repository after "compilerun.sh"
+# (or the IDE) has compiled the classes into folder "bin". CDS only archives
+# classes that are loaded from jar files, so the classes are packed into a
+# jar first. Use the archive with the same class path:
+# java -XX:SharedArchiveFile=lib/driftingdroids-cli.jsa -cp lib/driftingdroids-cli.jar driftingdroids.ui.Starter <gameID>
+
+DESTDIR=bin
+JAR=lib/driftingdroids-cli.jar
+ARCHIVE=lib/driftingdroids-cli.jsa
+
+mkdir -p lib
+rm -f $JAR $ARCHIVE
+jar cf $JAR -C $DESTDIR .
+java -XX:ArchiveClassesAtExit=$ARCHIVE -Xmx800M -cp $JAR driftingdroids.ui.Starter -warmup
@@ -4,12 +4,15 @@
 
 DESTDIR=bin
 SRCDIR=src
+JFRSRCDIR=src-jfr
 
 echo compile...
 rm -rf $DESTDIR
 mkdir $DESTDIR
 javac -sourcepath $SRCDIR -d $DESTDIR -cp designgridlayout-1.11.jar -source 1.6 -target 1.6 $SRCDIR/driftingdroids/ui/*.java $SRCDIR/driftingdroids/model/*.java
 cp -rp $SRCDIR/META-INF $SRCDIR/*.properties $DESTDIR
+# optional: the Flight Recorder events need the jdk.jfr API (Java 11 or newer)
+javac -d $DESTDIR -cp $DESTDIR $JFRSRCDIR/driftingdroids/model/*.java 2>/dev/null || echo "skipped $JFRSRCDIR (no jdk.jfr API)"
 
 echo
 echo run...
@@ -0,0 +1,137 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+
+
+/**
+ * Java Flight Recorder implementation of <code>SolverEvents</code>.
+ * <p>
+ * This class is loaded by reflection only, when the <code>jdk.jfr</code> API is available.
+ * It's in the optional source folder "src-jfr", because it can't be compiled with Java
+ * versions older than 11, while the rest of the program is compiled for Java 1.6.
+ * <p>
+ * No event is created before the Flight Recorder has been initialized (by the first recording,
+ * e.g. <code>-XX:StartFlightRecording</code> or <code>jcmd JFR.start</code>), because creating
+ * the first event initializes the JFR event classes, which takes several hundred milliseconds.
+ */
+final class SolverEventsJfr extends SolverEvents {
+
+    @Name("driftingdroids.IddfsIteration")
+    @Label("IDDFS Iteration")
+    @Category({"DriftingDroids", "Solver"})
+    @StackTrace(false)
+    static final class IddfsIterationEvent extends Event {
+        @Label("Depth Limit")
+        int depthLimit;
+        @Label("Nodes Expanded")
+        long nodesExpanded;
+        @Label("Known States")
+        @DataAmount(DataAmount.BYTES)
+        long knownStatesBytes;
+        @Label("Iteration Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long iterationTime;
+    }
+
+    @Name("driftingdroids.BfsLevel")
+    @Label("BFS Level")
+    @Category({"DriftingDroids", "Solver"})
+    @StackTrace(false)
+    static final class BfsLevelEvent extends Event {
+        @Label("Depth")
+        int depth;
+        @Label("Number of States")
+        int numStates;
+        @Label("Level Time")
+        @Timespan(Timespan.NANOSECONDS)
+        long levelTime;
+    }
+
+    @Name("driftingdroids.ArrayAllocation")
+    @Label("Array Allocation")
+    @Category({"DriftingDroids", "Data Structure"})
+    @StackTrace(false)
+    static final class ArrayAllocationEvent extends Event {
+        @Label("Data Structure")
+        String structure;
+        @Label("Array Kind")
+        String kind;
+        @Label("Array Size")
+        @DataAmount(DataAmount.BYTES)
+        long arrayBytes;
+        @Label("Total Size")
+        @DataAmount(DataAmount.BYTES)
+        long totalBytes;
+    }
+
+
+
+    @Override
+    void iddfsIteration(final int depthLimit, final long nodesExpanded, final long knownStatesBytes, final long nanos) {
+        if (false == FlightRecorder.isInitialized()) {
+            return;
+        }
+        final IddfsIterationEvent event = new IddfsIterationEvent();
+        if (true == event.isEnabled()) {
+            event.depthLimit = depthLimit;
+            event.nodesExpanded = nodesExpanded;
+            event.knownStatesBytes = knownStatesBytes;
+            event.iterationTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    void bfsLevel(final int depth, final int numStates, final long nanos) {
+        if (false == FlightRecorder.isInitialized()) {
+            return;
+        }
+        final BfsLevelEvent event = new BfsLevelEvent();
+        if (true == event.isEnabled()) {
+            event.depth = depth;
+            event.numStates = numStates;
+            event.levelTime = nanos;
+            event.commit();
+        }
+    }
+
+    @Override
+    void arrayAllocated(final Object structure, final String kind, final long arrayBytes, final long totalBytes) {
+        if (false == FlightRecorder.isInitialized()) {
+            return;
+        }
+        final ArrayAllocationEvent event = new ArrayAllocationEvent();
+        if (true == event.isEnabled()) {
+            event.structure = structure.getClass().getSimpleName();
+            event.kind = kind;
+            event.arrayBytes = arrayBytes;
+            event.totalBytes = totalBytes;
+            event.commit();
+        }
+    }
+}
@@ -47,10 +47,10 @@ public class Board {
     public static final int NUMROBOTS_STANDARD = 4;
     
     public static final String[] ROBOT_COLOR_NAMES_SHORT = {    //also used as part of L10N-keys
-        "r", "g", "b", "y", "s"
+        "r", "g", "b", "y", "s", "p", "o", "c"
     };
     public static final String[] ROBOT_COLOR_NAMES_LONG = {     //also used as part of L10N-keys
-        "red", "green", "blue", "yellow", "silver"
+        "red", "green", "blue", "yellow", "silver", "purple", "orange", "cyan"
     };
     
     public static final int GOAL_CIRCLE   = 0;
@@ -339,7 +339,7 @@ public class Board {
 
     public static Board createBoardFreestyle(final Board oldBoard, final int width, final int height, final int numRobots) {
         if ((width < WIDTH_MIN) || (height < HEIGHT_MIN) || (width*height > SIZE_MAX)) {
-            System.out.println("error in createBoardFreestyle(): invalid parameter: width=" + width + " height=" + height + " size=" + width*height);
+            Instrumentation.getDefault().message(Instrumentation.Level.SUMMARY, "error in createBoardFreestyle(): invalid parameter: width=" + width + " height=" + height + " size=" + width*height);
             return oldBoard;
         }
         final Board newBoard = new Board(width, height, numRobots);
@@ -464,7 +464,7 @@ public class Board {
                 throw new IllegalArgumentException("robots or goal position are not valid");
             }
         } catch (Exception e) {
-            System.out.println("error while parsing fingerprint(" + idStr +") :  " + e.toString());
+            Instrumentation.getDefault().message(Instrumentation.Level.SUMMARY, "error while parsing fingerprint(" + idStr +") :  " + e.toString());
             result = null;
         }
         return result;
@@ -689,7 +689,7 @@ public class Board {
                 throw new IllegalArgumentException("uncompressed data length mismatch");
             }
         } catch(Exception e) {
-            System.out.println("error in unb64unzip: " + e.toString());
+            Instrumentation.getDefault().message(Instrumentation.Level.SUMMARY, "error in unb64unzip: " + e.toString());
             result = null;
         }
         return result;
@@ -829,6 +829,9 @@ public class Board {
             this.setRobot(2, 13 + 11 * this.width, false); //B
             this.setRobot(3, 15 +  0 * this.width, false); //Y
             this.setRobot(4, 15 +  7 * this.width, false); //S
+            this.setRobot(5,  0 + 15 * this.width, false); //P
+            this.setRobot(6,  8 +  0 * this.width, false); //O
+            this.setRobot(7,  0 +  8 * this.width, false); //C
         }
     }
     
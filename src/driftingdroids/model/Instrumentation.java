@@ -0,0 +1,157 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+
+
+
+/**
+ * Receives diagnostic output and statistics of the solvers, solutions and board parsing.
+ * <p>
+ * The default instance is {@link #NONE} which does nothing at all.
+ * Subclasses override the callbacks they are interested in.
+ * Callers must check {@link #isEnabled(Level)} before they build a message,
+ * so that a disabled level costs nothing but a field comparison.
+ */
+public abstract class Instrumentation {
+
+    public enum Level {
+        OFF, SUMMARY, PER_DEPTH, PER_NODE;
+    }
+
+    /** does nothing at all. */
+    public static final Instrumentation NONE = new Instrumentation(Level.OFF) { };
+
+    private static volatile Instrumentation defaultInstance = NONE;
+
+
+
+    /**
+     * @return the instrumentation that is used by new solvers and by the static board methods.
+     */
+    public static Instrumentation getDefault() {
+        return defaultInstance;
+    }
+
+    public static void setDefault(final Instrumentation instrumentation) {
+        defaultInstance = (null == instrumentation ? NONE : instrumentation);
+    }
+
+    /**
+     * @return a new instrumentation that prints everything up to the given level to System.out.
+     */
+    public static Instrumentation createConsole(final Level level) {
+        return new Console(level, System.out, 1 << 20);
+    }
+
+
+
+    private final Level level;
+
+    protected Instrumentation(final Level level) {
+        this.level = level;
+    }
+
+    public final Level getLevel() {
+        return this.level;
+    }
+
+    public final boolean isEnabled(final Level lvl) {
+        return (Level.OFF != lvl) && (lvl.ordinal() <= this.level.ordinal());
+    }
+
+    /**
+     * @return the number of expanded nodes between two calls of {@link #node(Solver, int, int[])}.
+     */
+    public int getNodeSamplingInterval() {
+        return Integer.MAX_VALUE;
+    }
+
+
+
+    /**
+     * a text message of the given level.
+     */
+    public void message(final Level lvl, final String text) {
+        //nothing
+    }
+
+    /**
+     * called at level PER_DEPTH when a solver has finished one depth (IDDFS iteration or BFS level).
+     * @param solver the solver
+     * @param depth the depth that has been finished
+     * @param numStates number of states found at this depth (BFS) or nodes expanded in this iteration (IDDFS)
+     * @param nanos duration of this depth
+     */
+    public void depth(final Solver solver, final int depth, final long numStates, final long nanos) {
+        //nothing
+    }
+
+    /**
+     * called at level PER_NODE for every n-th node expanded by a solver.
+     * @param solver the solver
+     * @param depth the depth of the node
+     * @param state the robot positions, goal robot last (don't modify or keep a reference)
+     */
+    public void node(final Solver solver, final int depth, final int[] state) {
+        //nothing
+    }
+
+
+
+    private static final class Console extends Instrumentation {
+        private final PrintStream out;
+        private final int nodeSamplingInterval;
+
+        private Console(final Level level, final PrintStream out, final int nodeSamplingInterval) {
+            super(level);
+            this.out = out;
+            this.nodeSamplingInterval = nodeSamplingInterval;
+        }
+
+        @Override
+        public int getNodeSamplingInterval() {
+            return this.nodeSamplingInterval;
+        }
+
+        @Override
+        public void message(final Level lvl, final String text) {
+            if (true == this.isEnabled(lvl)) {
+                this.out.println(text);
+            }
+        }
+
+        @Override
+        public void depth(final Solver solver, final int depth, final long numStates, final long nanos) {
+            if (true == this.isEnabled(Level.PER_DEPTH)) {
+                this.out.println(solver.getClass().getSimpleName() + ":  finished depth=" + depth +
+                        " states=" + numStates + " time=" + nanos / 1000000L + "ms");
+            }
+        }
+
+        @Override
+        public void node(final Solver solver, final int depth, final int[] state) {
+            if (true == this.isEnabled(Level.PER_NODE)) {
+                this.out.println(solver.getClass().getSimpleName() + ":  node depth=" + depth +
+                        " state=" + Arrays.toString(state));
+            }
+        }
+    }
+}
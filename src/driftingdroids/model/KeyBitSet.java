@@ -0,0 +1,99 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * This class is a set of DriftingDroids keys (see <tt>KeyTrieSet</tt>) that stores
+ * one bit for each possible state of the board, indexed by the rank of the key
+ * (see <code>KeyRanker</code>).
+ * <p>
+ * It's an alternative to <tt>KeyTrieSet</tt> when the whole state space fits into memory:
+ * for 4 robots on the 16x16 board it needs 83 MB, independent of the number of keys added.
+ */
+public final class KeyBitSet {
+
+    private final KeyRanker ranker;
+    private final long[] bits;
+
+
+
+    /**
+     * Constructs an empty set.
+     *
+     * @param ranker the ranker of the keys
+     */
+    public KeyBitSet(final KeyRanker ranker) {
+        final long words = (ranker.getNumRanks() + 63) >>> 6;
+        if (words > Integer.MAX_VALUE - 8) {
+            throw new IllegalArgumentException("too many ranks: " + ranker.getNumRanks());
+        }
+        this.ranker = ranker;
+        this.bits = new long[(int)words];
+    }
+
+
+
+    /**
+     * @param ranker the ranker of the keys
+     * @return number of bytes allocated by a set for this ranker
+     */
+    public static long bytesRequired(final KeyRanker ranker) {
+        return ((ranker.getNumRanks() + 63) >>> 6) << 3;
+    }
+
+
+    /**
+     * Adds the specified key to this set if it is not already present.
+     *
+     * @param key generated by <code>KeyMakerInt</code>
+     * @return <code>true</code> if this set did not already contain the specified key
+     */
+    public final boolean add(final int key) {
+        return this.add(key & 0xffffffffL);
+    }
+
+
+    /**
+     * Adds the specified key to this set if it is not already present.
+     *
+     * @param key generated by <code>KeyMakerLong</code>
+     * @return <code>true</code> if this set did not already contain the specified key
+     */
+    public final boolean add(final long key) {
+        final long rank = this.ranker.rank(key);
+        final int idx = (int)(rank >>> 6);
+        final long word = this.bits[idx];
+        final long mask = 1L << rank;   //shift distance is (rank & 63)
+        if (0 != (word & mask)) {
+            return false;
+        }
+        this.bits[idx] = word | mask;
+        return true;
+    }
+
+
+    /**
+     * @return number of bytes allocated by this set
+     */
+    public final long getBytesAllocated() {
+        return (long)this.bits.length << 3;
+    }
+
+}
@@ -56,6 +56,21 @@ public interface KeyDepthMap {
      */
     public boolean putIfGreater(long key, int byteValue);
 
+    /**
+     * Associates the specified <code>unsigned byte</code> value with the specified
+     * 128-bit key in this map.
+     * If the map previously contained a mapping for the key, the specified value
+     * replaces the old value only if it's greater than the old value.
+     *
+     * @param keyLow - lower 64 bits of the key with which the specified value is to be associated;
+     * must be generated by <code>KeyMakerLong128</code>.
+     * @param keyHigh - upper 64 bits of the key (see <code>KeyMakerLong128.getKeyHigh()</code>)
+     * @param byteValue - unsigned byte value (0...255) to be associated with the specified key
+     * @return true if the specified value was placed in this map. false if the map already contained
+     * for this key a value that is greater than or equal to the specified value.
+     */
+    public boolean putIfGreater(long keyLow, long keyHigh, int byteValue);
+
     /**
      * Returns the number of elements (key/value pairs) currently stored in this map.
      * This is for information only; some implementations may return a wrong value.
@@ -72,4 +87,11 @@ public interface KeyDepthMap {
      */
     public long allocatedBytes();
 
+    /**
+     * Removes all elements from this map.
+     * Implementations should keep their internal arrays for re-use,
+     * so that a cleared map can be filled again without new allocations.
+     */
+    public void clear();
+
 }
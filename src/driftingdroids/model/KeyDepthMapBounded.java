@@ -0,0 +1,229 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.Arrays;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> with a fixed amount of memory,
+ * for <code>int</code>, <code>long</code> or 128-bit keys of any size.
+ * <p>
+ * It's a hash table that is divided into buckets of <code>BUCKET_SIZE</code> entries.
+ * A key can only be stored in the bucket selected by its hash value. If this bucket
+ * is full, the entry with the smallest value is evicted to make room for the new key,
+ * but only if the new value is greater. Otherwise the new key is not stored at all.
+ * The values are the remaining search depths of the IDDFS solver, so the entries that
+ * are evicted (or not stored) first are those whose subtrees are cheapest to search again.
+ * <p>
+ * An evicted or rejected key is unknown to the map, that is <code>putIfGreater</code>
+ * returns true for it (again). The solver then searches a duplicate subtree once more,
+ * which costs time but doesn't change the result.
+ * A <tt>byteValue</tt> of zero is never stored.
+ */
+public final class KeyDepthMapBounded implements KeyDepthMap {
+
+    public static final int BUCKET_SIZE = 8;
+    private static final int BUCKET_SHIFT = 3;
+    public static final int BYTES_PER_ENTRY = 8 + 1;
+    public static final int BYTES_PER_ENTRY_128 = 8 + 8 + 1;
+
+    private final long[] keys;
+    private final long[] keysHigh;  //upper 64 bits of 128-bit keys, or null
+    private final byte[] values;    //zero marks an empty entry
+    private final long numBuckets;
+    private final long maxBytes;
+    private int size;
+    private long evictions;
+
+
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param maxBytes the maximum number of bytes that the map will allocate.
+     * @param keyBits the maximum number of bits used by any key that will be put into the map.
+     */
+    public KeyDepthMapBounded(final long maxBytes, final int keyBits) {
+        final int bytesPerEntry = (keyBits > 64 ? BYTES_PER_ENTRY_128 : BYTES_PER_ENTRY);
+        this.numBuckets = Math.max(1, Math.min(Integer.MAX_VALUE >> BUCKET_SHIFT, maxBytes / (BUCKET_SIZE * bytesPerEntry)));
+        this.keys = new long[(int)this.numBuckets << BUCKET_SHIFT];
+        this.keysHigh = (keyBits > 64 ? new long[this.keys.length] : null);
+        this.values = new byte[(int)this.numBuckets << BUCKET_SHIFT];
+        this.maxBytes = maxBytes;
+        this.size = 0;
+        this.evictions = 0;
+        SolverEvents.INSTANCE.arrayAllocated(this, "bounded", this.allocatedBytes(), this.allocatedBytes());
+    }
+
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(key & 0xffffffffL, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        //Fibonacci hashing, then map the upper 32 bits of the hash to the range of bucket numbers
+        final int start = (int)((((key * 0x9E3779B97F4A7C15L) >>> 32) * this.numBuckets) >>> 32) << BUCKET_SHIFT;
+        final int end = start + BUCKET_SIZE;
+        int victim = start, victimValue = Integer.MAX_VALUE;
+        for (int i = start;  i < end;  ++i) {
+            final int value = 0xff & this.values[i];
+            if (0 == value) {
+                //empty entry: the key is not in the bucket, because buckets are filled from the start
+                if (0 == byteValue) {
+                    return false;
+                }
+                this.keys[i] = key;
+                this.values[i] = (byte)byteValue;
+                ++this.size;
+                return true;
+            } else if (key == this.keys[i]) {
+                if (byteValue > value) {  //putIfGreater
+                    this.values[i] = (byte)byteValue;
+                    return true;
+                }
+                return false;
+            } else if (value < victimValue) {
+                victimValue = value;
+                victim = i;
+            }
+        }
+        //new key and full bucket: evict the entry with the smallest value
+        if (0 == byteValue) {
+            return false;
+        }
+        if (byteValue <= victimValue) {
+            return true;    //don't evict a deeper subtree, the new key stays unknown
+        }
+        this.keys[victim] = key;
+        this.values[victim] = (byte)byteValue;
+        ++this.evictions;
+        return true;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long keyLow, final long keyHigh, final int byteValue) {
+        if (null == this.keysHigh) {
+            if (0 != keyHigh) {
+                throw new IllegalArgumentException("key is greater than 64 bits");
+            }
+            return this.putIfGreater(keyLow, byteValue);
+        }
+        //this method is copy&paste from putIfGreater(long,int) with the comparison of keysHigh added.
+        final long hash = (keyLow ^ (keyHigh * 0xC2B2AE3D27D4EB4FL)) * 0x9E3779B97F4A7C15L;
+        final int start = (int)(((hash >>> 32) * this.numBuckets) >>> 32) << BUCKET_SHIFT;
+        final int end = start + BUCKET_SIZE;
+        int victim = start, victimValue = Integer.MAX_VALUE;
+        for (int i = start;  i < end;  ++i) {
+            final int value = 0xff & this.values[i];
+            if (0 == value) {
+                //empty entry: the key is not in the bucket, because buckets are filled from the start
+                if (0 == byteValue) {
+                    return false;
+                }
+                this.keys[i] = keyLow;
+                this.keysHigh[i] = keyHigh;
+                this.values[i] = (byte)byteValue;
+                ++this.size;
+                return true;
+            } else if ((keyLow == this.keys[i]) && (keyHigh == this.keysHigh[i])) {
+                if (byteValue > value) {  //putIfGreater
+                    this.values[i] = (byte)byteValue;
+                    return true;
+                }
+                return false;
+            } else if (value < victimValue) {
+                victimValue = value;
+                victim = i;
+            }
+        }
+        //new key and full bucket: evict the entry with the smallest value
+        if (0 == byteValue) {
+            return false;
+        }
+        if (byteValue <= victimValue) {
+            return true;    //don't evict a deeper subtree, the new key stays unknown
+        }
+        this.keys[victim] = keyLow;
+        this.keysHigh[victim] = keyHigh;
+        this.values[victim] = (byte)byteValue;
+        ++this.evictions;
+        return true;
+    }
+
+
+    /**
+     * @return the maximum number of bytes that was specified when this map was constructed
+     */
+    public long getMaxBytes() {
+        return this.maxBytes;
+    }
+
+
+    /**
+     * @return the number of entries that have been evicted since the last <code>clear()</code>
+     */
+    public long getEvictions() {
+        return this.evictions;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return (long)this.keys.length * (null == this.keysHigh ? BYTES_PER_ENTRY : BYTES_PER_ENTRY_128);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, (byte)0);
+        this.size = 0;
+        this.evictions = 0;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
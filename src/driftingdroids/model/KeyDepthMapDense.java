@@ -0,0 +1,171 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.Arrays;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> that has one array element for each
+ * possible state of the board, indexed by the rank of the key (see <code>KeyRanker</code>).
+ * <p>
+ * It's a fixed allocation that doesn't grow, and a lookup is a single memory access
+ * without any pointer chasing. For 4 robots on the 16x16 board it needs 664 MB with
+ * 8-bit values or 332 MB with 4-bit values.
+ * <p>
+ * 4-bit values are saturated at 15: a value greater than 15 is stored as 15.
+ * <code>putIfGreater</code> then returns true for this key again, and the solver searches
+ * a duplicate subtree once more, which costs time but doesn't change the result.
+ * A <tt>byteValue</tt> of zero is never stored.
+ */
+public final class KeyDepthMapDense implements KeyDepthMap {
+
+    public static final long MAX_BYTES = Integer.MAX_VALUE - 8;
+
+    private final KeyRanker ranker;
+    private final byte[] values;        //zero marks an unknown key
+    private final boolean isNibbles;    //4-bit values: two values per byte
+    private int size;
+
+
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param ranker the ranker of the keys
+     * @param valueBits number of bits per value: 4 or 8
+     */
+    public KeyDepthMapDense(final KeyRanker ranker, final int valueBits) {
+        final long bytes = bytesRequired(ranker, valueBits);
+        if (bytes > MAX_BYTES) {
+            throw new IllegalArgumentException("too many ranks: " + ranker.getNumRanks());
+        }
+        this.ranker = ranker;
+        this.isNibbles = (4 == valueBits);
+        this.values = new byte[(int)bytes];
+        this.size = 0;
+        SolverEvents.INSTANCE.arrayAllocated(this, "dense", this.values.length, this.allocatedBytes());
+    }
+
+
+
+    /**
+     * @param ranker the ranker of the keys
+     * @param valueBits number of bits per value: 4 or 8
+     * @return number of bytes allocated by a map for these parameters
+     */
+    public static long bytesRequired(final KeyRanker ranker, final int valueBits) {
+        if ((4 != valueBits) && (8 != valueBits)) {
+            throw new IllegalArgumentException("valueBits=" + valueBits);
+        }
+        return (4 == valueBits ? (ranker.getNumRanks() + 1) >>> 1 : ranker.getNumRanks());
+    }
+
+
+    /**
+     * @return number of bits per value: 4 or 8
+     */
+    public int getValueBits() {
+        return (true == this.isNibbles ? 4 : 8);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(key & 0xffffffffL, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        final long rank = this.ranker.rank(key);
+        if (true == this.isNibbles) {
+            final int idx = (int)(rank >>> 1);
+            final int shift = ((int)rank & 1) << 2;
+            final int both = this.values[idx];
+            final int value = (both >>> shift) & 0xf;
+            if (byteValue > value) {  //putIfGreater
+                if (0 == value) {
+                    ++this.size;
+                }
+                final int newValue = Math.min(byteValue, 0xf);
+                this.values[idx] = (byte)((both & ~(0xf << shift)) | (newValue << shift));
+                return true;
+            }
+        } else {
+            final int idx = (int)rank;
+            final int value = 0xff & this.values[idx];
+            if (byteValue > value) {  //putIfGreater
+                if (0 == value) {
+                    ++this.size;
+                }
+                this.values[idx] = (byte)byteValue;
+                return true;
+            }
+        }
+        return false;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long keyLow, final long keyHigh, final int byteValue) {
+        if (0 != keyHigh) {
+            throw new IllegalArgumentException("key is greater than 64 bits");
+        }
+        return this.putIfGreater(keyLow, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return this.values.length;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, (byte)0);
+        this.size = 0;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -17,18 +17,41 @@
 
 package driftingdroids.model;
 
+import java.lang.ref.SoftReference;
+
 /**
  * Factory that creates instances of KeyDepthMap.
+ * <p>
+ * Maps that are no longer needed can be handed back using <code>release()</code>.
+ * The factory keeps one released map per thread and recycles it for the next
+ * request with a compatible board, after clearing it. This saves the allocation
+ * and garbage collection of the map's large internal arrays when many puzzles
+ * are solved one after another. The pooled map is softly referenced,
+ * so it doesn't cause an OutOfMemoryError.
  */
 public class KeyDepthMapFactory {
 
-    private static Class<? extends KeyDepthMap> defaultClazz = KeyDepthMapTrieSpecial.class;
+    private static Class<? extends KeyDepthMap> defaultClazz = null;   //null: adaptive, see KeyDepthMapPolicy
+
+    private static volatile long memoryCap = 0;    //0: unlimited
+    private static volatile boolean poolEnabled = true;
+    private static final ThreadLocal<SoftReference<PooledMap>> POOL = new ThreadLocal<SoftReference<PooledMap>>();
+
+    private static final class PooledMap {
+        private final KeyDepthMap map;
+        private final String boardSignature;
+        private PooledMap(final KeyDepthMap map, final String boardSignature) {
+            this.map = map;
+            this.boardSignature = boardSignature;
+        }
+    }
 
 
     /**
      * Set this factory's default implementation class of KeyDepthMap.
 	 
-     * @param clazz the implementation class of KeyDepthMap
+     * @param clazz the implementation class of KeyDepthMap,
+     * or <code>null</code> to let <code>KeyDepthMapPolicy</code> choose it (default)
      */
     public static void setDefaultClass(Class<? extends KeyDepthMap> clazz) {
         defaultClazz = clazz;
@@ -43,7 +66,32 @@ public class KeyDepthMapFactory {
      * @return
      */
     public static KeyDepthMap newInstance(Board board) {
-        return newInstance(board, defaultClazz);
+        return newPolicy(board).createMap();
+    }
+
+
+    /**
+     * Creates a new policy that chooses the implementation of KeyDepthMap for one solver run.
+     * Uses this factory's default implementation class of KeyDepthMap, if it's set.
+     * 
+     * @param board the board that is to be solved
+     * @return a new instance of KeyDepthMapPolicy
+     */
+    public static KeyDepthMapPolicy newPolicy(Board board) {
+        return newPolicy(board, 1);
+    }
+
+
+    /**
+     * Creates a new policy for one of several maps that are used by the same solver run.
+     * The maps share the memory cap, each policy gets an equal part of it.
+     * 
+     * @param board the board that is to be solved
+     * @param numMaps the number of maps used by the solver run
+     * @return a new instance of KeyDepthMapPolicy
+     */
+    public static KeyDepthMapPolicy newPolicy(Board board, int numMaps) {
+        return new KeyDepthMapPolicy(board, defaultClazz, memoryCap / Math.max(1, numMaps));
     }
 
 
@@ -55,13 +103,170 @@ public class KeyDepthMapFactory {
      * @return a new instance of KeyDepthMap
      */
     public static KeyDepthMap newInstance(Board board, Class<? extends KeyDepthMap> clazz) {
+        return newInstance(board, clazz, true);
+    }
+
+
+    /**
+     * Creates a new instance of KeyDepthMap.
+     * 
+     * @param board the board that is to be solved
+     * @param clazz the implementation class of KeyDepthMap
+     * @param useMoreMemoryForSpeedup allow the implementation to trade some more memory for a speedup
+     * @return a new instance of KeyDepthMap
+     */
+    public static KeyDepthMap newInstance(Board board, Class<? extends KeyDepthMap> clazz, boolean useMoreMemoryForSpeedup) {
+        final KeyDepthMap pooled = takePooled(board, clazz, useMoreMemoryForSpeedup, getBoundedMapBytes());
+        if (null != pooled) {
+            return pooled;
+        }
         if (KeyDepthMapTrieGeneric.class.equals(clazz)) {
             return new KeyDepthMapTrieGeneric(Math.max(12, board.getNumRobots() * board.sizeNumBits));
         } else if (KeyDepthMapTrieSpecial.class.equals(clazz)) {
-            return KeyDepthMapTrieSpecial.createInstance(board, true);
+            return KeyDepthMapTrieSpecial.createInstance(board, useMoreMemoryForSpeedup);
+        } else if (KeyDepthMapBounded.class.equals(clazz)) {
+            return newBoundedInstance(board, getBoundedMapBytes());
+        } else if (KeyDepthMapFlat.class.equals(clazz)) {
+            final int keyBits = board.getNumRobots() * board.sizeNumBits;
+            if (keyBits > KeyDepthMapFlat.MAX_KEY_BITS) {
+                return KeyDepthMapTrieSpecial.createInstance(board, useMoreMemoryForSpeedup);   //too many keys for a flat array
+            }
+            return new KeyDepthMapFlat(keyBits);
+        } else if (KeyDepthMapDense.class.equals(clazz)) {
+            final KeyRanker ranker = KeyRanker.createInstance(board);
+            final int valueBits = (useMoreMemoryForSpeedup ? 8 : 4);
+            if ((null == ranker) || (KeyDepthMapDense.bytesRequired(ranker, valueBits) > KeyDepthMapDense.MAX_BYTES)) {
+                return KeyDepthMapTrieSpecial.createInstance(board, useMoreMemoryForSpeedup);   //too many states for a dense array
+            }
+            return new KeyDepthMapDense(ranker, valueBits);
+        } else if (KeyDepthMapHashTable.class.equals(clazz)) {
+            final int keyBits = board.getNumRobots() * board.sizeNumBits;
+            if (keyBits > KeyDepthMapHashTable.MAX_KEY_BITS) {
+                return KeyDepthMapTrieSpecial.createInstance(board, useMoreMemoryForSpeedup);   //keys are too large to be packed with the values
+            }
+            return new KeyDepthMapHashTable(keyBits);
         } else {
             throw new IllegalArgumentException("unknown KeyDepthMap class: " + String.valueOf(clazz));
         }
     }
 
+
+    /**
+     * Creates a new instance of KeyDepthMapBounded.
+     * 
+     * @param board the board that is to be solved
+     * @param maxBytes the maximum number of bytes that the map will allocate
+     * @return a new instance of KeyDepthMapBounded
+     */
+    static KeyDepthMap newBoundedInstance(Board board, long maxBytes) {
+        final KeyDepthMap pooled = takePooled(board, KeyDepthMapBounded.class, true, maxBytes);
+        if (null != pooled) {
+            return pooled;
+        }
+        return new KeyDepthMapBounded(maxBytes, board.getNumRobots() * board.sizeNumBits);
+    }
+
+
+    /**
+     * Sets the maximum number of bytes that the KeyDepthMap of one solver may allocate.
+     * When a map is about to grow beyond this limit, the solver replaces it by
+     * a <code>KeyDepthMapBounded</code> of half the limit, which evicts entries instead of growing.
+     * (The old map is still alive when the new one is allocated, so it may only use the other half.)
+     * If a solver uses several maps, then they share this limit (see <code>newPolicy(Board, int)</code>).
+     * 
+     * @param bytes the maximum number of bytes, or 0 for no limit (default)
+     */
+    public static void setMemoryCap(long bytes) {
+        memoryCap = Math.max(0, bytes);
+    }
+
+
+    /**
+     * @return the maximum number of bytes that the KeyDepthMap of one solver may allocate, or 0 for no limit
+     */
+    public static long getMemoryCap() {
+        return memoryCap;
+    }
+
+
+    static long getBoundedMapBytes() {
+        final long cap = memoryCap;
+        return (0 == cap ? Runtime.getRuntime().maxMemory() / 4 : cap / 2);
+    }
+
+
+    /**
+     * Hands a map back to this factory when it's no longer used by the caller.
+     * The map may be recycled by the next call of <code>newInstance</code> in this thread.
+     * 
+     * @param map the map that is no longer used
+     * @param board the board that was used to create the map
+     */
+    public static void release(KeyDepthMap map, Board board) {
+        if ((true == poolEnabled) && (null != map)) {
+            POOL.set(new SoftReference<PooledMap>(new PooledMap(map, boardSignature(board))));
+        }
+    }
+
+
+    /**
+     * Enables or disables the recycling of released maps (enabled by default).
+     * 
+     * @param enabled true to recycle released maps
+     */
+    public static void setPoolEnabled(boolean enabled) {
+        poolEnabled = enabled;
+        if (false == enabled) {
+            POOL.remove();
+        }
+    }
+
+
+    private static KeyDepthMap takePooled(final Board board, final Class<? extends KeyDepthMap> clazz, final boolean useMoreMemoryForSpeedup, final long boundedBytes) {
+        final SoftReference<PooledMap> ref = POOL.get();
+        if ((false == poolEnabled) || (null == ref)) {
+            return null;
+        }
+        final PooledMap pooled = ref.get();
+        if (null == pooled) {
+            POOL.remove();
+            return null;
+        }
+        if ((false == isVariant(pooled.map, board, clazz, useMoreMemoryForSpeedup, boundedBytes)) || (false == pooled.boardSignature.equals(boardSignature(board)))) {
+            return null;    //keep it, a later request may match
+        }
+        POOL.remove();
+        pooled.map.clear();
+        return pooled.map;
+    }
+
+
+    //true if the map is exactly the variant that newInstance() would create for these parameters,
+    //so that a pooled map never uses more memory than the caller has chosen to allow.
+    private static boolean isVariant(final KeyDepthMap map, final Board board, final Class<? extends KeyDepthMap> clazz,
+            final boolean useMoreMemoryForSpeedup, final long boundedBytes) {
+        if (KeyDepthMapTrieSpecial.class.equals(clazz)) {
+            return (map instanceof KeyDepthMapTrieSpecial) &&
+                    (KeyDepthMapTrieSpecial.is8BitInstance(map) == KeyDepthMapTrieSpecial.is8BitInstance(board, useMoreMemoryForSpeedup));
+        } else if (KeyDepthMapDense.class.equals(clazz)) {
+            return (map instanceof KeyDepthMapDense) && (((KeyDepthMapDense)map).getValueBits() == (useMoreMemoryForSpeedup ? 8 : 4));
+        } else if (KeyDepthMapBounded.class.equals(clazz)) {
+            return (map instanceof KeyDepthMapBounded) && (((KeyDepthMapBounded)map).getMaxBytes() == boundedBytes);
+        }
+        return clazz.equals(map.getClass());
+    }
+
+
+    //the internal structure of a map depends on board size, number of robots and position of obstacles
+    private static String boardSignature(final Board board) {
+        final StringBuilder sb = new StringBuilder();
+        sb.append(board.width).append('x').append(board.height).append('r').append(board.getNumRobots());
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            if (true == board.isObstacle(pos)) {
+                sb.append(',').append(pos);
+            }
+        }
+        return sb.toString();
+    }
+
 }
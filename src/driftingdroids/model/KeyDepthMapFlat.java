@@ -0,0 +1,135 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.Arrays;
+
+
+
+/**
+ * This class is a <code>KeyDepthMap</code> for small keys, based on a flat
+ * <tt>byte</tt> array that has one element for each possible key.
+ * <p>
+ * The key is used directly as the array index, so a lookup is a single memory access
+ * without any hashing or probing. The array has <code>2^keyBits</code> elements,
+ * that's why this map is used only for boards whose state fits into
+ * <code>MAX_KEY_BITS</code> bits, for example 1 to 3 robots on the 16x16 board,
+ * 2 robots on boards up to 64x64, or 1 robot on any board.
+ * A <tt>byteValue</tt> of zero is never stored.
+ */
+public final class KeyDepthMapFlat implements KeyDepthMap {
+
+    public static final int MAX_KEY_BITS = 26;   //64 MB
+
+    private final byte[] values;    //zero marks an unknown key
+    private int size;
+
+
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param keyBits the maximum number of bits used by any key that will be put into the map.
+     * must not be greater than <code>MAX_KEY_BITS</code>.
+     */
+    public KeyDepthMapFlat(final int keyBits) {
+        if (keyBits > MAX_KEY_BITS) {
+            throw new IllegalArgumentException("keyBits=" + keyBits + " is greater than " + MAX_KEY_BITS);
+        }
+        this.values = new byte[1 << keyBits];
+        this.size = 0;
+        SolverEvents.INSTANCE.arrayAllocated(this, "flat", this.values.length, this.allocatedBytes());
+    }
+
+
+
+    /**
+     * @param keyBits number of bits of the keys
+     * @return number of bytes allocated by a map for keys of this size
+     */
+    public static long bytesRequired(final int keyBits) {
+        return 1L << keyBits;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        final int value = 0xff & this.values[key];
+        if (byteValue > value) {  //putIfGreater
+            if (0 == value) {
+                ++this.size;
+            }
+            this.values[key] = (byte)byteValue;
+            return true;
+        }
+        return false;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        return this.putIfGreater((int)key, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long keyLow, final long keyHigh, final int byteValue) {
+        if (0 != keyHigh) {
+            throw new IllegalArgumentException("key is greater than " + MAX_KEY_BITS + " bits");
+        }
+        return this.putIfGreater((int)keyLow, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return this.values.length;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public void clear() {
+        Arrays.fill(this.values, (byte)0);
+        this.size = 0;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -0,0 +1,257 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.Arrays;
+
+
+
+/**
+ * This class is a minimal <code>Map&ltK,V&gt</code> implementation for primitive
+ * <code>int</code> or <code>long</code> keys K and <tt>byte</tt> values V,
+ *  based on a flat hash table with open addressing (linear probing).
+ * <p>
+ * Each entry is a single <code>long</code> value: <code>(key << 8) | value</code>,
+ * so keys may use at most 56 bits. An entry value of zero marks an empty slot,
+ * that's why a <tt>byteValue</tt> of zero is never stored.
+ * <p>
+ * A lookup touches one or two adjacent cache lines instead of walking
+ * through the nodes of a trie, at the cost of more memory per stored key.
+ * The table grows incrementally: when it's getting full, a new table of
+ * twice the size is allocated and each call of <code>putIfGreater</code> moves
+ * a few entries from the old table to the new one, so that no single call
+ * has to re-insert all entries at once.
+ */
+public final class KeyDepthMapHashTable implements KeyDepthMap {
+
+    public static final int MAX_KEY_BITS = 56;
+
+    private static final int INITIAL_CAPACITY_SHIFT = 16;
+    private static final int MAX_LOAD_PERCENT = 75;
+    private static final int MIGRATE_PER_PUT = 4;   //old slots moved per call; 4 finishes well before the next resize
+
+    private long[] table;           //current table
+    private int tableShift;         //table.length == 1 << tableShift
+    private int threshold;          //size limit of current table
+    private long[] oldTable;        //previous table while it's being migrated, or null
+    private int oldShift;
+    private int migrateIndex;       //all slots of oldTable below this index have been moved to table
+    private int size;
+    private final int keyBits;
+
+
+
+    /**
+     * Constructs an empty map.
+     *
+     * @param keyBits the maximum number of bits used by any key that will be put into the map.
+     * must not be greater than <code>MAX_KEY_BITS</code>.
+     */
+    public KeyDepthMapHashTable(final int keyBits) {
+        if (keyBits > MAX_KEY_BITS) {
+            throw new IllegalArgumentException("keyBits=" + keyBits + " is greater than " + MAX_KEY_BITS);
+        }
+        this.keyBits = keyBits;
+        this.tableShift = INITIAL_CAPACITY_SHIFT;
+        this.table = new long[1 << this.tableShift];
+        this.threshold = (int)((long)this.table.length * MAX_LOAD_PERCENT / 100);
+        this.oldTable = null;
+        this.size = 0;
+    }
+
+
+
+    private static int slot(final long key, final int shift) {
+        return (int)((key * 0x9E3779B97F4A7C15L) >>> (64 - shift));  //Fibonacci hashing
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
+     */
+    @Override
+    public boolean putIfGreater(final int key, final int byteValue) {
+        return this.putIfGreater(key & 0xffffffffL, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long key, final int byteValue) {
+        final long keyShifted = key << 8;
+        if (null != this.oldTable) {
+            this.migrate();
+        }
+        //look up the current table
+        final long[] tbl = this.table;
+        final int mask = tbl.length - 1;
+        int idx = slot(key, this.tableShift);
+        long entry;
+        while (0 != (entry = tbl[idx])) {
+            if ((entry & ~0xffL) == keyShifted) {
+                if (byteValue > (int)(entry & 0xff)) {  //putIfGreater
+                    tbl[idx] = keyShifted | byteValue;
+                    return true;
+                }
+                return false;
+            }
+            idx = (idx + 1) & mask;
+        }
+        //look up the not yet migrated part of the old table
+        if (null != this.oldTable) {
+            final long[] old = this.oldTable;
+            final int oldMask = old.length - 1;
+            int oldIdx = slot(key, this.oldShift);
+            long oldEntry;
+            while (0 != (oldEntry = old[oldIdx])) {
+                if ((oldEntry & ~0xffL) == keyShifted) {
+                    if (oldIdx >= this.migrateIndex) {
+                        if (byteValue > (int)(oldEntry & 0xff)) {  //putIfGreater
+                            old[oldIdx] = keyShifted | byteValue;
+                            return true;
+                        }
+                        return false;
+                    }
+                    break;  //already migrated, but not found in the current table: can't happen
+                }
+                oldIdx = (oldIdx + 1) & oldMask;
+            }
+        }
+        //new key: insert into the empty slot of the current table
+        if (0 == byteValue) {
+            return false;
+        }
+        tbl[idx] = keyShifted | byteValue;
+        if (++this.size > this.threshold) {
+            this.grow();
+        }
+        return true;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public boolean putIfGreater(final long keyLow, final long keyHigh, final int byteValue) {
+        if (0 != keyHigh) {
+            throw new IllegalArgumentException("key is greater than " + MAX_KEY_BITS + " bits");
+        }
+        return this.putIfGreater(keyLow, byteValue);
+    }
+
+
+    private void grow() {
+        if (null != this.oldTable) {
+            //previous migration is still running (only possible with unusual settings): finish it now
+            while (null != this.oldTable) {
+                this.migrate();
+            }
+        }
+        this.oldTable = this.table;
+        this.oldShift = this.tableShift;
+        this.migrateIndex = 0;
+        this.tableShift += 1;
+        this.table = new long[1 << this.tableShift];
+        this.threshold = (int)((long)this.table.length * MAX_LOAD_PERCENT / 100);
+        SolverEvents.INSTANCE.arrayAllocated(this, "table", this.table.length * 8L, this.allocatedBytes());
+    }
+
+
+    private void migrate() {
+        final long[] old = this.oldTable;
+        final long[] tbl = this.table;
+        final int mask = tbl.length - 1;
+        final int end = Math.min(old.length, this.migrateIndex + MIGRATE_PER_PUT);
+        for (int i = this.migrateIndex;  i < end;  ++i) {
+            final long entry = old[i];
+            if (0 != entry) {
+                int idx = slot(entry >>> 8, this.tableShift);
+                while (0 != tbl[idx]) {
+                    idx = (idx + 1) & mask;
+                }
+                tbl[idx] = entry;
+            }
+        }
+        this.migrateIndex = end;
+        if (end == old.length) {
+            this.oldTable = null;   //migration finished
+        }
+    }
+
+
+    /**
+     * Puts all entries of this map into the specified map.
+     * The keys are passed as <code>int</code> if they have at most 32 bits, else as <code>long</code>.
+     *
+     * @param target the map that receives the entries
+     */
+    public void copyTo(final KeyDepthMap target) {
+        this.copyTo(target, this.table, 0);
+        if (null != this.oldTable) {
+            this.copyTo(target, this.oldTable, this.migrateIndex);
+        }
+    }
+
+    private void copyTo(final KeyDepthMap target, final long[] tbl, final int startIndex) {
+        final boolean isInt = (this.keyBits <= 32);
+        for (int i = startIndex;  i < tbl.length;  ++i) {
+            final long entry = tbl[i];
+            if (0 != entry) {
+                if (true == isInt) {
+                    target.putIfGreater((int)(entry >>> 8), (int)(entry & 0xff));
+                } else {
+                    target.putIfGreater(entry >>> 8, (int)(entry & 0xff));
+                }
+            }
+        }
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
+     */
+    @Override
+    public long allocatedBytes() {
+        return (long)this.table.length * 8 + (null == this.oldTable ? 0 : (long)this.oldTable.length * 8);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public void clear() {
+        //keep the current table for re-use
+        Arrays.fill(this.table, 0L);
+        this.oldTable = null;
+        this.size = 0;
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#size()
+     */
+    @Override
+    public int size() {
+        return this.size;
+    }
+
+}
@@ -0,0 +1,211 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * Chooses the <code>KeyDepthMap</code> implementation for one run of the IDDFS solver,
+ * and replaces it by a more suitable one while the solver is running.
+ * <p>
+ * Most puzzles are solved after storing a few thousand states. For these,
+ * the small <code>KeyDepthMapHashTable</code> is fastest because it doesn't have to
+ * allocate and clear the large arrays of the tries. When the hash table grows beyond
+ * <code>SMALL_STATES</code>, or the estimated number of states of the next iteration does,
+ * all its entries are copied into a larger map: <code>KeyDepthMapFlat</code> if the keys
+ * are small enough (few robots) and its array fits into the free heap memory,
+ * <code>KeyDepthMapDense</code> if its fixed array fits into the free heap memory and
+ * a trie for the estimated number of states would be even larger,
+ * else a trie: <code>KeyDepthMapTrieSpecial</code> if the estimated
+ * number of states fits into the free heap memory, or the more compact
+ * <code>KeyDepthMapTrieGeneric</code> otherwise.
+ * <p>
+ * The estimate is extrapolated from the number of states that have been stored
+ * by the previous IDDFS iterations, and it's limited by the number of possible
+ * robot positions on the board (which depends on board size, number of robots and obstacles).
+ * <p>
+ * If a memory cap is set (see <code>KeyDepthMapFactory.setMemoryCap()</code>), any map that
+ * grows beyond half of the cap is replaced by a <code>KeyDepthMapBounded</code>. A policy for one
+ * of several maps of the same solver only gets its part of the cap. Only the entries
+ * of a hash table are copied, the entries of a trie are lost. This only means that the solver
+ * searches some duplicate subtrees again.
+ * <p>
+ * Apart from the memory cap, a policy with a fixed implementation class never migrates.
+ */
+public final class KeyDepthMapPolicy {
+
+    private static final long SMALL_STATES = 1L << 14;  //keep the hash table up to this size
+    private static final int LOOKAHEAD_ITERATIONS = 2;  //a trie should hold the states of this many more iterations
+    private static final long BYTES_PER_STATE_SPECIAL = 64;
+    private static final long BYTES_LOOKUP_ARRAY = 64L << 20;
+
+    private final Board board;
+    private final Class<? extends KeyDepthMap> fixedClazz;
+    private final int keyBits;
+    private final KeyRanker ranker;    //null if the board has too many states for KeyDepthMapDense
+    private final long memoryCap;
+    private final double maxStates;
+    private long expectedStates;
+    private double growth;
+
+
+
+    /**
+     * @param board the board that is to be solved
+     * @param fixedClazz the implementation class of KeyDepthMap that is always used,
+     * or <code>null</code> to choose the implementation adaptively
+     */
+    public KeyDepthMapPolicy(final Board board, final Class<? extends KeyDepthMap> fixedClazz) {
+        this(board, fixedClazz, KeyDepthMapFactory.getMemoryCap());
+    }
+
+
+    /**
+     * @param board the board that is to be solved
+     * @param fixedClazz the implementation class of KeyDepthMap that is always used,
+     * or <code>null</code> to choose the implementation adaptively
+     * @param memoryCap the maximum number of bytes that the maps of this policy may allocate, or 0 for no limit
+     */
+    public KeyDepthMapPolicy(final Board board, final Class<? extends KeyDepthMap> fixedClazz, final long memoryCap) {
+        this.board = board;
+        this.fixedClazz = fixedClazz;
+        this.keyBits = board.getNumRobots() * board.sizeNumBits;
+        this.ranker = ((null == fixedClazz) ? KeyRanker.createInstance(board) : null);
+        this.memoryCap = Math.max(0, memoryCap);
+        int freeCells = 0;
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            if (false == board.isObstacle(pos)) {
+                ++freeCells;
+            }
+        }
+        //goal robot on any free cell, the other robots on distinct free cells in any order
+        double states = freeCells;
+        for (int i = 1;  i < board.getNumRobots();  ++i) {
+            states *= (double)(freeCells - i) / i;
+        }
+        this.maxStates = Math.max(1.0, states);
+        this.expectedStates = 0;
+        this.growth = 1.0;
+    }
+
+
+
+    /**
+     * @return a new map to be used for the first iteration
+     */
+    public KeyDepthMap createMap() {
+        if (null != this.fixedClazz) {
+            return KeyDepthMapFactory.newInstance(this.board, this.fixedClazz);
+        }
+        if (this.keyBits <= KeyDepthMapHashTable.MAX_KEY_BITS) {
+            return KeyDepthMapFactory.newInstance(this.board, KeyDepthMapHashTable.class);
+        }
+        return this.createLargeMap(this.expectedStates);
+    }
+
+
+    /**
+     * updates the estimate of the number of states.
+     *
+     * @param statesPrevious number of states stored during the iteration before the last one
+     * @param statesLast number of states stored during the last iteration
+     */
+    public void iterationFinished(final long statesPrevious, final long statesLast) {
+        if ((statesPrevious > 0) && (statesLast > statesPrevious)) {
+            this.growth = (double)statesLast / statesPrevious;
+        }
+        this.expectedStates = this.limit(statesLast * this.growth);
+    }
+
+
+    /**
+     * @return the estimated number of states that will be stored during the next iteration
+     */
+    public long getExpectedStates() {
+        return this.expectedStates;
+    }
+
+
+    /**
+     * @param map the map that is currently used
+     * @return true if <code>migrate()</code> should be called now
+     */
+    public boolean isMigrationNeeded(final KeyDepthMap map) {
+        if (map instanceof KeyDepthMapBounded) {
+            return false;
+        }
+        if ((0 < this.memoryCap) && (map.allocatedBytes() > this.memoryCap / 2)) {
+            return true;
+        }
+        return (null == this.fixedClazz) && (map instanceof KeyDepthMapHashTable) &&
+                ((map.size() > SMALL_STATES) || (this.expectedStates > SMALL_STATES));
+    }
+
+
+    /**
+     * copies all entries of the specified map into a new map that is better suited
+     * for the expected number of states.
+     *
+     * @param map the map that is currently used; must not be used any more after this call
+     * @return the new map
+     */
+    public KeyDepthMap migrate(final KeyDepthMap map) {
+        final KeyDepthMap result;
+        if ((0 < this.memoryCap) && (map.allocatedBytes() > this.memoryCap / 2)) {
+            result = KeyDepthMapFactory.newBoundedInstance(this.board, this.memoryCap / 2);
+        } else {
+            final long states = Math.max(this.expectedStates, map.size());
+            result = this.createLargeMap(this.limit(states * Math.pow(this.growth, LOOKAHEAD_ITERATIONS)));
+        }
+        if (map instanceof KeyDepthMapHashTable) {
+            ((KeyDepthMapHashTable)map).copyTo(result);
+        }
+        return result;
+    }
+
+
+    private KeyDepthMap createLargeMap(final long states) {
+        final Runtime rt = Runtime.getRuntime();
+        long freeBytes = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+        if (0 < this.memoryCap) {
+            freeBytes = Math.min(freeBytes, this.memoryCap / 2);
+        }
+        if ((this.keyBits <= KeyDepthMapFlat.MAX_KEY_BITS) && (KeyDepthMapFlat.bytesRequired(this.keyBits) <= freeBytes / 2)) {
+            return KeyDepthMapFactory.newInstance(this.board, KeyDepthMapFlat.class);
+        }
+        if (null != this.ranker) {
+            for (int valueBits = 8;  valueBits >= 4;  valueBits -= 4) {
+                final long bytes = KeyDepthMapDense.bytesRequired(this.ranker, valueBits);
+                if ((bytes <= KeyDepthMapDense.MAX_BYTES) && (bytes <= freeBytes / 2) && (bytes <= states * BYTES_PER_STATE_SPECIAL)) {
+                    return KeyDepthMapFactory.newInstance(this.board, KeyDepthMapDense.class, (8 == valueBits));
+                }
+            }
+        }
+        if (states * BYTES_PER_STATE_SPECIAL <= freeBytes) {
+            final boolean useMoreMemoryForSpeedup = (states * BYTES_PER_STATE_SPECIAL + BYTES_LOOKUP_ARRAY <= freeBytes);
+            return KeyDepthMapFactory.newInstance(this.board, KeyDepthMapTrieSpecial.class, useMoreMemoryForSpeedup);
+        }
+        return KeyDepthMapFactory.newInstance(this.board, KeyDepthMapTrieGeneric.class);
+    }
+
+
+    private long limit(final double states) {
+        return (long)Math.min(states, this.maxStates);
+    }
+
+}
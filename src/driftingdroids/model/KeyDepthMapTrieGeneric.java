@@ -83,6 +83,33 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
     }
 
 
+    //append a node array; recycle an array left over from before clear() if possible
+    private void addNodeArray() {
+        if (this.nodeArrays.length <= this.numNodeArrays) {
+            this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
+        }
+        if (null != this.nodeArrays[this.numNodeArrays]) {
+            ++this.numNodeArrays;
+        } else {
+            this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+        }
+    }
+
+    //append a leaf array; recycle an array left over from before clear() if possible
+    private void addLeafArray() {
+        if (this.leafArrays.length <= this.numLeafArrays) {
+            this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
+        }
+        if (null != this.leafArrays[this.numLeafArrays]) {
+            ++this.numLeafArrays;
+        } else {
+            final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
+            Arrays.fill(newLeafArray, DEFAULT_VALUE);
+            this.leafArrays[this.numLeafArrays++] = newLeafArray;
+        }
+    }
+
+
     /* (non-Javadoc)
      * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
      */
@@ -99,10 +126,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
             if (0 == nodeIndex) {
                 //create a new node
                 if (this.nextNode >= this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
                 nodeIndex = this.nextNode;
@@ -137,10 +161,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
                 //previous and current keys are not equal
                 //create a new node
                 if (this.nextNode >= this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
                 nodeIndex = this.nextNode;
@@ -180,12 +201,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
             //previous and current keys are not equal
             //create a new leaf
             if (this.nextLeaf >= this.nextLeafArray) {
-                if (this.leafArrays.length <= this.numLeafArrays) {
-                    this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                Arrays.fill(newLeafArray, DEFAULT_VALUE);
-                this.leafArrays[this.numLeafArrays++] = newLeafArray;
+                this.addLeafArray();
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
             leafIndex = this.nextLeaf;
@@ -224,10 +240,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
             if (0 == nodeIndex) {
                 //create a new node
                 if (this.nextNode >= this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
                 nodeIndex = this.nextNode;
@@ -237,6 +250,48 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
             nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
             nidx = (nodeIndex & NODE_ARRAY_MASK) + ((int)key & this.nodeMask);  //(int)
         }
+        return this.putIfGreaterCompressed(nodeArray, nidx, i, key, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public final boolean putIfGreater(long keyLow, long keyHigh, final int byteValue) {
+        //the first loop is copy&paste from putIfGreater(long,int) with a 128-bit shift of (keyLow,keyHigh).
+        //after this loop the remaining key fits into keyLow.
+        //root node
+        int[] nodeArray = this.rootNode;
+        int nidx = (int)keyLow & this.nodeMask;
+        int nodeIndex, i;   //used by both for() loops
+        //go through nodes (without compression because (key<<8)+value is greater than "int")
+        for (i = 1;  i < this.nodeNumberUnCompr;  ++i) {
+            nodeIndex = nodeArray[nidx];
+            keyLow = (keyLow >>> this.nodeBits) | (keyHigh << (64 - this.nodeBits));
+            keyHigh >>>= this.nodeBits;
+            if (0 == nodeIndex) {
+                //create a new node
+                if (this.nextNode >= this.nextNodeArray) {
+                    this.addNodeArray();
+                    this.nextNodeArray += NODE_ARRAY_SIZE;
+                }
+                nodeIndex = this.nextNode;
+                this.nextNode += this.nodeSize;
+                nodeArray[nidx] = nodeIndex;
+            }
+            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+            nidx = (nodeIndex & NODE_ARRAY_MASK) + ((int)keyLow & this.nodeMask);
+        }
+        assert 0 == keyHigh : keyHigh;
+        return this.putIfGreaterCompressed(nodeArray, nidx, i, keyLow, byteValue);
+    }
+
+
+    //go through the nodes with compression, starting at node number i, and the leaf.
+    //shared by putIfGreater(long,int) and putIfGreater(long,long,int).
+    private boolean putIfGreaterCompressed(int[] nodeArray, int nidx, int i, long key, final int byteValue) {
+        int nodeIndex;
         //go through nodes (with compression because (key<<8)+value is inside "int" range now)
         for ( ;  i < this.nodeNumber;  ++i) {
             nodeIndex = nodeArray[nidx];
@@ -262,10 +317,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
                 //previous and current keys are not equal
                 //create a new node
                 if (this.nextNode >= this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
                 nodeIndex = this.nextNode;
@@ -305,12 +357,7 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
             //previous and current keys are not equal
             //create a new leaf
             if (this.nextLeaf >= this.nextLeafArray) {
-                if (this.leafArrays.length <= this.numLeafArrays) {
-                    this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                Arrays.fill(newLeafArray, DEFAULT_VALUE);
-                this.leafArrays[this.numLeafArrays++] = newLeafArray;
+                this.addLeafArray();
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
             leafIndex = this.nextLeaf;
@@ -379,6 +426,27 @@ public final class KeyDepthMapTrieGeneric implements KeyDepthMap {
     }
 
 
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public final void clear() {
+        //keep all arrays for re-use, but reset the used ones
+        for (int i = 0;  i < this.numNodeArrays;  ++i) {
+            Arrays.fill(this.nodeArrays[i], 0);
+        }
+        for (int i = 0;  i < this.numLeafArrays;  ++i) {
+            Arrays.fill(this.leafArrays[i], DEFAULT_VALUE);
+        }
+        this.numNodeArrays = 1;
+        this.nextNode = this.nodeSize;
+        this.nextNodeArray = NODE_ARRAY_SIZE;
+        this.numLeafArrays = 0;
+        this.nextLeaf = this.leafSize;
+        this.nextLeafArray = 0;
+    }
+
+
     /* (non-Javadoc)
      * @see driftingdroids.model.KeyDepthMap#allocatedBytes()
      */
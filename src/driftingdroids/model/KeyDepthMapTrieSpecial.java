@@ -30,13 +30,18 @@ import java.util.Arrays;
  * and a compact storage of data.
  * <p>
  * This class is called "special" because it's specialized to work with keys
- * that are generated by the <code>KeyMakerInt</code> or <code>KeyMakerLong</code>
+ * that are generated by the <code>KeyMakerInt</code>, <code>KeyMakerLong</code> or <code>KeyMakerLong128</code>
  * classes, only. That means that it relies on the specific properties of these keys,
  * which are:<br>
  * * keys consist of N elements: the positions of the N robots on the board<br>
  * * all elements 1...N of a key are unique: no two robots are on the same position<br>
  * * elements 1...N-1 of a key are sorted: non-goal robots can be substituted for each other<br>
- *
+ * <p>
+ * A node entry that would point to a leaf (or leaf node) which contains only one key
+ * stores this key and its value directly ("compressed branch"). If a second key arrives
+ * and both values fit into 7 bits, the entry stores both keys and values ("compressed pair").
+ * Only a third key makes it allocate the leaf (or leaf node). Search depths are always
+ * smaller than 128, and most leaves never get more than two keys.
  */
 public class KeyDepthMapTrieSpecial implements KeyDepthMap {
 
@@ -56,19 +61,39 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
     protected final int nodeNumber, nodeNumberUnCompr, nodeShift, nodeMask;
     protected final int leafNodeShift, leafNodeMask, leafNodeSize, leafSize, leafMask;
 
+    //a "compressed pair" stores two keys with 7-bit values in one negative node entry.
+    //it's distinguished from a single "compressed branch" by bit 30, which is always set in a branch.
+    protected static final int PAIR_TAG = 0x80000000;
+    protected static final int PAIR_TEST = 0x40000000;
+    protected static final int PAIR_SHIFT = 15;     //bits per element of a pair: key (8 bits max) + value (7 bits)
+    protected static final int PAIR_MASK = (1 << PAIR_SHIFT) - 1;
+    protected static final int PAIR_VALUE_MAX = 0x7f;
+    protected final boolean isLeafNodePairs;        //remaining key at the leaf node fits into a pair element
+
+    protected final int rootNodeSize;
     protected final int[] nodeSizeLookup;
     protected final int[] elementLookup;
     
     protected int size = 0;
 
     public static KeyDepthMapTrieSpecial createInstance(final Board board, final boolean useMoreMemoryForSpeedup) {
-        if (useMoreMemoryForSpeedup && (8 == board.sizeNumBits) && ((4 == board.getNumRobots()) || (5 == board.getNumRobots()))) {
+        if (true == is8BitInstance(board, useMoreMemoryForSpeedup)) {
             return new KeyDepthMapTrieSpecial8Bit(board);
         } else {
             return new KeyDepthMapTrieSpecial(board);
         }
     }
 
+    //true if createInstance() returns the specialization with the large lookup array
+    static boolean is8BitInstance(final Board board, final boolean useMoreMemoryForSpeedup) {
+        return useMoreMemoryForSpeedup && (8 == board.sizeNumBits) && ((4 == board.getNumRobots()) || (5 == board.getNumRobots()));
+    }
+
+    //true if the map is the specialization with the large lookup array
+    static boolean is8BitInstance(final KeyDepthMap map) {
+        return (map instanceof KeyDepthMapTrieSpecial8Bit);
+    }
+
     private KeyDepthMapTrieSpecial(final Board board) {
         this.nodeSizeLookup = new int[board.size];
         for (int i = 0;  i < this.nodeSizeLookup.length;  ++i) {
@@ -103,7 +128,8 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         this.rootNode = new int[NODE_ARRAY_SIZE];
         this.nodeArrays[0] = this.rootNode;
         this.numNodeArrays = 1;
-        this.nextNode = board.size;             //root node already exists
+        this.rootNodeSize = board.size;
+        this.nextNode = this.rootNodeSize;      //root node already exists
         this.nextNodeArray = NODE_ARRAY_SIZE;   //first array already exists
 
         this.leafNodeShift = board.sizeNumBits / 2;
@@ -111,6 +137,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
         this.leafNodeSize = this.leafNodeMask + 1;
         this.leafSize = 1 << (board.sizeNumBits - this.leafNodeShift);
         this.leafMask = this.leafSize - 1;
+        this.isLeafNodePairs = (board.sizeNumBits + 7 <= PAIR_SHIFT);
         this.leafArrays = new byte[16][];
         this.numLeafArrays = 0;
         this.nextLeaf = this.leafSize;  //no leaves yet, but skip leaf "0" because this is the special value
@@ -118,6 +145,191 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
     }
 
 
+    //append a node array; recycle an array left over from before clear() if possible
+    protected final void addNodeArray() {
+        if (this.nodeArrays.length <= this.numNodeArrays) {
+            this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
+        }
+        if (null != this.nodeArrays[this.numNodeArrays]) {
+            ++this.numNodeArrays;
+        } else {
+            this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+            SolverEvents.INSTANCE.arrayAllocated(this, "node", NODE_ARRAY_SIZE * 4L, this.allocatedBytes());
+        }
+    }
+
+    //append a leaf array; recycle an array left over from before clear() if possible
+    protected final void addLeafArray() {
+        if (this.leafArrays.length <= this.numLeafArrays) {
+            this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
+        }
+        if (null != this.leafArrays[this.numLeafArrays]) {
+            ++this.numLeafArrays;
+        } else {
+            this.leafArrays[this.numLeafArrays++] = new byte[LEAF_ARRAY_SIZE];
+            SolverEvents.INSTANCE.arrayAllocated(this, "leaf", LEAF_ARRAY_SIZE, this.allocatedBytes());
+        }
+    }
+
+
+    //go through leaf node (with compression) and leaf.
+    //key contains the remaining elements of the leaf node and the leaf.
+    protected final boolean putLeafNode(final int[] nodeArray, final int nidx, final int key, final int byteValue) {
+        int nodeIndex = nodeArray[nidx];
+        if (0 == nodeIndex) {
+            // -> node index is null = unused
+            //write current key+value as a "compressed branch" (negative node index)
+            //exit immediately because no further nodes and no leaf need to be stored
+            nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+            return true;
+        } else if (0 > nodeIndex) {
+            if (0 != (nodeIndex & PAIR_TEST)) {
+                // -> node index is negative = used by a single "compressed branch"
+                final int prevKey = (~nodeIndex) >> 8;
+                final int prevVal = 0xff & nodeIndex;
+                //previous and current keys are equal (duplicate key)
+                if (prevKey == key) {
+                    if (byteValue > prevVal) {  //putIfGreater
+                        nodeArray[nidx] = (nodeIndex ^ prevVal) | byteValue;    //negative
+                        return true;
+                    }
+                    return false;
+                }
+                //previous and current keys are not equal
+                if ((true == this.isLeafNodePairs) && (prevVal <= PAIR_VALUE_MAX) && (byteValue <= PAIR_VALUE_MAX)) {
+                    //write both keys+values as a "compressed pair"
+                    nodeArray[nidx] = PAIR_TAG | (((prevKey << 7) | prevVal) << PAIR_SHIFT) | (key << 7) | byteValue;
+                    return true;
+                }
+                //create a new node and push previous "compressed branch" one node further
+                nodeIndex = this.addLeafNode(nodeArray, nidx);
+                this.putLeaf(nodeIndex, prevKey, prevVal);
+            } else {
+                // -> node index is negative = used by a "compressed pair"
+                final int result = putPair(nodeArray, nidx, nodeIndex, key, byteValue);
+                if (0 <= result) {
+                    return (1 == result);
+                }
+                //third key or value too large: create a new node and push both elements of the pair one node further
+                final int element0 = nodeIndex & PAIR_MASK, element1 = (nodeIndex >>> PAIR_SHIFT) & PAIR_MASK;
+                nodeIndex = this.addLeafNode(nodeArray, nidx);
+                this.putLeaf(nodeIndex, element1 >>> 7, element1 & PAIR_VALUE_MAX);
+                this.putLeaf(nodeIndex, element0 >>> 7, element0 & PAIR_VALUE_MAX);
+            }
+        }
+        return this.putLeaf(nodeIndex, key, byteValue);
+    }
+
+
+    //get leaf (with compression) of the leaf node at nodeIndex.
+    //key contains the remaining elements of the leaf node and the leaf.
+    private boolean putLeaf(final int nodeIndex, int key, final int byteValue) {
+        final int[] nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+        final int nidx = (nodeIndex & NODE_ARRAY_MASK) + (key & this.leafNodeMask);
+        int leafIndex = nodeArray[nidx];
+        key >>>= this.leafNodeShift;
+        if (0 == leafIndex) {
+            // -> leaf index is null = unused
+            //write current value as a "compressed branch" (negative leaf index)
+            //exit immediately because no leaf needs to be stored
+            nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
+            return true;
+        } else if (0 > leafIndex) {
+            if (0 != (leafIndex & PAIR_TEST)) {
+                // -> leaf index is negative = used by a single "compressed branch"
+                final int prevKey = (~leafIndex) >> 8;
+                final int prevVal = 0xff & leafIndex;
+                //previous and current keys are equal (duplicate key)
+                if (prevKey == key) {
+                    if (byteValue > prevVal) {  //putIfGreater
+                        nodeArray[nidx] = (leafIndex ^ prevVal) | byteValue;    //negative
+                        return true;
+                    }
+                    return false;
+                }
+                //previous and current keys are not equal
+                if ((prevVal <= PAIR_VALUE_MAX) && (byteValue <= PAIR_VALUE_MAX)) {
+                    //write both keys+values as a "compressed pair"; most leaves never get a third key
+                    nodeArray[nidx] = PAIR_TAG | (((prevKey << 7) | prevVal) << PAIR_SHIFT) | (key << 7) | byteValue;
+                    return true;
+                }
+                //create a new leaf and push the previous "compressed branch" further to the leaf
+                leafIndex = this.addLeaf(nodeArray, nidx);
+                this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT][(leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask)] = (byte)prevVal;
+            } else {
+                // -> leaf index is negative = used by a "compressed pair"
+                final int result = putPair(nodeArray, nidx, leafIndex, key, byteValue);
+                if (0 <= result) {
+                    return (1 == result);
+                }
+                //third key or value too large: create a new leaf and push both elements of the pair further to the leaf
+                final int element0 = leafIndex & PAIR_MASK, element1 = (leafIndex >>> PAIR_SHIFT) & PAIR_MASK;
+                leafIndex = this.addLeaf(nodeArray, nidx);
+                final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
+                final int leafStart = leafIndex & LEAF_ARRAY_MASK;
+                leafArray[leafStart + ((element1 >>> 7) & this.leafMask)] = (byte)(element1 & PAIR_VALUE_MAX);
+                leafArray[leafStart + ((element0 >>> 7) & this.leafMask)] = (byte)(element0 & PAIR_VALUE_MAX);
+            }
+        }
+        final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
+        final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (key & this.leafMask);
+        final byte prevVal = leafArray[lidx];
+        if (byteValue > (0xff & prevVal)) {  //putIfGreater
+            leafArray[lidx] = (byte)byteValue;
+            return true;
+        }
+        return false;
+    }
+
+
+    //update the element of a "compressed pair" that matches key.
+    //returns 1 if the value was stored, 0 if it was not greater, -1 if the pair can't store key+value.
+    private static int putPair(final int[] nodeArray, final int nidx, final int pair, final int key, final int byteValue) {
+        final int element, shift;
+        if (key == ((pair & PAIR_MASK) >>> 7)) {
+            element = pair & PAIR_MASK;
+            shift = 0;
+        } else if (key == ((pair >>> (PAIR_SHIFT + 7)) & 0xff)) {
+            element = (pair >>> PAIR_SHIFT) & PAIR_MASK;
+            shift = PAIR_SHIFT;
+        } else {
+            return -1;  //third key
+        }
+        if (byteValue <= (element & PAIR_VALUE_MAX)) {
+            return 0;
+        } else if (byteValue > PAIR_VALUE_MAX) {
+            return -1;
+        }
+        nodeArray[nidx] = pair ^ ((element ^ ((key << 7) | byteValue)) << shift);
+        return 1;
+    }
+
+
+    private int addLeafNode(final int[] nodeArray, final int nidx) {
+        if (this.nextNode + this.leafNodeSize > this.nextNodeArray) {
+            this.addNodeArray();
+            this.nextNode = this.nextNodeArray;
+            this.nextNodeArray += NODE_ARRAY_SIZE;
+        }
+        final int nodeIndex = this.nextNode;
+        this.nextNode += this.leafNodeSize;
+        nodeArray[nidx] = nodeIndex;
+        return nodeIndex;
+    }
+
+
+    private int addLeaf(final int[] nodeArray, final int nidx) {
+        if (this.nextLeaf >= this.nextLeafArray) {
+            this.addLeafArray();
+            this.nextLeafArray += LEAF_ARRAY_SIZE;
+        }
+        final int leafIndex = this.nextLeaf;
+        this.nextLeaf += this.leafSize;
+        nodeArray[nidx] = leafIndex;
+        return leafIndex;
+    }
+
+
     /* (non-Javadoc)
      * @see driftingdroids.model.KeyDepthMap#putIfGreater(int, int)
      */
@@ -137,10 +349,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //create a new node
                 final int nodeSize = this.nodeSizeLookup[elementThis];
                 if (this.nextNode + nodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -180,10 +389,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //create a new node
                 final int nodeSize = this.nodeSizeLookup[elementThis];
                 if (this.nextNode + nodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -205,95 +411,9 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             }
             nidx += elementThisLookup;
         }
-        //go through leaf node (with compression)
-        nodeIndex = nodeArray[nidx];
+        //go through leaf node and leaf (with compression)
         key >>>= this.nodeShift;
-        if (0 == nodeIndex) {
-            // -> node index is null = unused
-            //write current key+value as a "compressed branch" (negative node index)
-            //exit immediately because no further nodes and no leaf need to be stored
-            nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
-            return true;
-        } else if (0 > nodeIndex) {
-            // -> node index is negative = used by a single "compressed branch"
-            final int prevKey = (~nodeIndex) >> 8;
-            final int prevVal = 0xff & nodeIndex;
-            //previous and current keys are equal (duplicate key)
-            if (prevKey == key) {
-                if (byteValue > prevVal) {  //putIfGreater
-                    nodeArray[nidx] = (nodeIndex ^ prevVal) | byteValue;    //negative
-                    return true;
-                }
-                return false;
-            }
-            //previous and current keys are not equal
-            //create a new node
-            if (this.nextNode + this.leafNodeSize > this.nextNodeArray) {
-                if (this.nodeArrays.length <= this.numNodeArrays) {
-                    this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                }
-                this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
-                this.nextNode = this.nextNodeArray;
-                this.nextNodeArray += NODE_ARRAY_SIZE;
-            }
-            nodeIndex = this.nextNode;
-            this.nextNode += this.leafNodeSize;
-            nodeArray[nidx] = nodeIndex;
-            //push previous "compressed branch" one node further
-            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-            nidx = (nodeIndex & NODE_ARRAY_MASK) + (prevKey & this.leafNodeMask);
-            nodeArray[nidx] = (~(prevKey >>> this.leafNodeShift) << 8) | prevVal;    //negative
-        } else {
-            // -> node index is positive = go to next node
-            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-        }
-        nidx = (nodeIndex & NODE_ARRAY_MASK) + (key & this.leafNodeMask);
-        //get leaf (with compression)
-        int leafIndex = nodeArray[nidx];
-        key >>>= this.leafNodeShift;
-        if (0 == leafIndex) {
-            // -> leaf index is null = unused
-            //write current value as a "compressed branch" (negative leaf index)
-            //exit immediately because no leaf needs to be stored
-            nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
-            return true;
-        } else if (0 > leafIndex) {
-            // -> leaf index is negative = used by a single "compressed branch"
-            final int prevKey = (~leafIndex) >> 8;
-            final int prevVal = 0xff & leafIndex;
-            //previous and current keys are equal (duplicate key)
-            if (prevKey == key) {
-                if (byteValue > prevVal) {  //putIfGreater
-                    nodeArray[nidx] = (leafIndex ^ prevVal) | byteValue;    //negative
-                    return true;
-                }
-                return false;
-            }
-            //previous and current keys are not equal
-            //create a new leaf
-            if (this.nextLeaf >= this.nextLeafArray) {
-                if (this.leafArrays.length <= this.numLeafArrays) {
-                    this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                this.leafArrays[this.numLeafArrays++] = newLeafArray;
-                this.nextLeafArray += LEAF_ARRAY_SIZE;
-            }
-            leafIndex = this.nextLeaf;
-            this.nextLeaf += this.leafSize;
-            nodeArray[nidx] = leafIndex;
-            //push the previous "compressed branch" further to the leaf
-            final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask);
-            this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT][lidx] = (byte)prevVal;
-        }
-        final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
-        final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (key & this.leafMask);
-        final byte prevVal = leafArray[lidx];
-        if (byteValue > (0xff & prevVal)) {  //putIfGreater
-            leafArray[lidx] = (byte)byteValue;
-            return true;
-        }
-        return false;
+        return this.putLeafNode(nodeArray, nidx, key, byteValue);
     }
 
 
@@ -317,10 +437,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //create a new node
                 final int nodeSize = this.nodeSizeLookup[elementThis];
                 if (this.nextNode + nodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -334,6 +451,55 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
             nidx += elementThisLookup;
         }
+        return this.putIfGreaterCompressed(nodeArray, nidx, elementThis, elementThisLookup, i, key, byteValue);
+    }
+
+
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#putIfGreater(long, long, int)
+     */
+    @Override
+    public boolean putIfGreater(long keyLow, long keyHigh, final int byteValue) {
+        //the first loop is copy&paste from putIfGreater(long,int) with a 128-bit shift of (keyLow,keyHigh).
+        //after this loop the remaining key fits into keyLow.
+        //root node
+        int nidx = (int)keyLow & this.nodeMask;
+        int[] nodeArray = this.rootNode;
+        int elementThis = nidx;
+        int elementThisLookup = this.elementLookup[nidx];
+        //go through nodes (without compression because (key<<8)+value is greater than "int")
+        int nodeIndex, i;   //used by both for() loops
+        for (i = 1;  i < this.nodeNumberUnCompr;  ++i) {
+            nodeIndex = nodeArray[nidx];
+            keyLow = (keyLow >>> this.nodeShift) | (keyHigh << (64 - this.nodeShift));
+            keyHigh >>>= this.nodeShift;
+            if (0 == nodeIndex) {
+                //create a new node
+                final int nodeSize = this.nodeSizeLookup[elementThis];
+                if (this.nextNode + nodeSize > this.nextNodeArray) {
+                    this.addNodeArray();
+                    this.nextNode = this.nextNodeArray;
+                    this.nextNodeArray += NODE_ARRAY_SIZE;
+                }
+                nodeIndex = this.nextNode;
+                this.nextNode += nodeSize;
+                nodeArray[nidx] = nodeIndex;
+            }
+            elementThis = (int)keyLow & this.nodeMask;
+            nidx = (nodeIndex & NODE_ARRAY_MASK) - elementThisLookup - 1;
+            elementThisLookup = this.elementLookup[elementThis];
+            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
+            nidx += elementThisLookup;
+        }
+        assert 0 == keyHigh : keyHigh;
+        return this.putIfGreaterCompressed(nodeArray, nidx, elementThis, elementThisLookup, i, keyLow, byteValue);
+    }
+
+
+    //go through the nodes with compression, starting at node number i, then the leaf node and leaf.
+    //shared by putIfGreater(long,int) and putIfGreater(long,long,int).
+    private boolean putIfGreaterCompressed(int[] nodeArray, int nidx, int elementThis, int elementThisLookup, int i, long key, final int byteValue) {
+        int nodeIndex;
         //go through nodes (with compression because (key<<8)+value is inside "int" range now)
         for ( ;  i < this.nodeNumber;  ++i) {
             nodeIndex = nodeArray[nidx];
@@ -360,10 +526,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //create a new node
                 final int nodeSize = this.nodeSizeLookup[elementThis];
                 if (this.nextNode + nodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -385,95 +548,9 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             }
             nidx += elementThisLookup;
         }
-        //go through leaf node (with compression)
-        nodeIndex = nodeArray[nidx];
+        //go through leaf node and leaf (with compression)
         key >>>= this.nodeShift;
-        if (0 == nodeIndex) {
-            // -> node index is null = unused
-            //write current key+value as a "compressed branch" (negative node index)
-            //exit immediately because no further nodes and no leaf need to be stored
-            nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
-            return true;
-        } else if (0 > nodeIndex) {
-            // -> node index is negative = used by a single "compressed branch"
-            final int prevKey = (~nodeIndex) >> 8;
-            final int prevVal = 0xff & nodeIndex;
-            //previous and current keys are equal (duplicate key)
-            if (prevKey == (int)key) {
-                if (byteValue > prevVal) {  //putIfGreater
-                    nodeArray[nidx] = (nodeIndex ^ prevVal) | byteValue;    //negative
-                    return true;
-                }
-                return false;
-            }
-            //previous and current keys are not equal
-            //create a new node
-            if (this.nextNode + this.leafNodeSize > this.nextNodeArray) {
-                if (this.nodeArrays.length <= this.numNodeArrays) {
-                    this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                }
-                this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
-                this.nextNode = this.nextNodeArray;
-                this.nextNodeArray += NODE_ARRAY_SIZE;
-            }
-            nodeIndex = this.nextNode;
-            this.nextNode += this.leafNodeSize;
-            nodeArray[nidx] = nodeIndex;
-            //push previous "compressed branch" one node further
-            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-            nidx = (nodeIndex & NODE_ARRAY_MASK) + (prevKey & this.leafNodeMask);
-            nodeArray[nidx] = (~(prevKey >>> this.leafNodeShift) << 8) | prevVal;    //negative
-        } else {
-            // -> node index is positive = go to next node
-            nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-        }
-        nidx = (nodeIndex & NODE_ARRAY_MASK) + ((int)key & this.leafNodeMask);
-        //get leaf (with compression)
-        int leafIndex = nodeArray[nidx];
-        key >>>= this.leafNodeShift;
-        if (0 == leafIndex) {
-            // -> leaf index is null = unused
-            //write current value as a "compressed branch" (negative leaf index)
-            //exit immediately because no leaf needs to be stored
-            nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
-            return true;
-        } else if (0 > leafIndex) {
-            // -> leaf index is negative = used by a single "compressed branch"
-            final int prevKey = (~leafIndex) >> 8;
-            final int prevVal = 0xff & leafIndex;
-            //previous and current keys are equal (duplicate key)
-            if (prevKey == (int)key) {
-                if (byteValue > prevVal) {  //putIfGreater
-                    nodeArray[nidx] = (leafIndex ^ prevVal) | byteValue;    //negative
-                    return true;
-                }
-                return false;
-            }
-            //previous and current keys are not equal
-            //create a new leaf
-            if (this.nextLeaf >= this.nextLeafArray) {
-                if (this.leafArrays.length <= this.numLeafArrays) {
-                    this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                }
-                final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                this.leafArrays[this.numLeafArrays++] = newLeafArray;
-                this.nextLeafArray += LEAF_ARRAY_SIZE;
-            }
-            leafIndex = this.nextLeaf;
-            this.nextLeaf += this.leafSize;
-            nodeArray[nidx] = leafIndex;
-            //push the previous "compressed branch" further to the leaf
-            final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask);
-            this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT][lidx] = (byte)prevVal;
-        }
-        final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
-        final int lidx = (leafIndex & LEAF_ARRAY_MASK) + ((int)key & this.leafMask);
-        final byte prevVal = leafArray[lidx];
-        if (byteValue > (0xff & prevVal)) {  //putIfGreater
-            leafArray[lidx] = (byte)byteValue;
-            return true;
-        }
-        return false;
+        return this.putLeafNode(nodeArray, nidx, (int)key, byteValue);
     }
 
 
@@ -502,6 +579,28 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
     }
 
 
+    /* (non-Javadoc)
+     * @see driftingdroids.model.KeyDepthMap#clear()
+     */
+    @Override
+    public void clear() {
+        //keep all arrays for re-use, but zero the used ones
+        for (int i = 0;  i < this.numNodeArrays;  ++i) {
+            Arrays.fill(this.nodeArrays[i], 0);
+        }
+        for (int i = 0;  i < this.numLeafArrays;  ++i) {
+            Arrays.fill(this.leafArrays[i], (byte)0);
+        }
+        this.numNodeArrays = 1;
+        this.nextNode = this.rootNodeSize;
+        this.nextNodeArray = NODE_ARRAY_SIZE;
+        this.numLeafArrays = 0;
+        this.nextLeaf = this.leafSize;
+        this.nextLeafArray = 0;
+        this.size = 0;
+    }
+
+
     /**
      * this class is a further specialization which trades some more memory for a speedup.
      * it can only be used for board size of 8 bits (256 == 16x16) and with 4 or 5 robots.
@@ -518,98 +617,16 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
             this.lookupArray = new int[LOOKUP_MASK + 1]; // 64 MiB
         }
 
+        @Override
+        public void clear() {
+            super.clear();
+            Arrays.fill(this.lookupArray, 0);
+        }
+
         @Override
         public boolean putIfGreater(int key, int byteValue) { // for 4 robots
-            int nidx = key & LOOKUP_MASK;
-            int nodeIndex = this.lookupArray[nidx];
-            int[] nodeArray;
-            key >>>= LOOKUP_SHIFT;
-            if (0 == nodeIndex) {
-                // -> node index is null = unused
-                //write current key+value as a "compressed branch" (negative node index)
-                //exit immediately because no further nodes and no leaf need to be stored
-                this.lookupArray[nidx] = ((~key) << 8) | byteValue;    //negative
-                return true;
-            } else if (0 > nodeIndex) {
-                // -> node index is negative = used by a single "compressed branch"
-                final int prevKey = (~nodeIndex) >> 8;
-                final int prevVal = 0xff & nodeIndex;
-                //previous and current keys are equal (duplicate key)
-                if (prevKey == key) {
-                    if (byteValue > prevVal) {  //putIfGreater
-                        this.lookupArray[nidx] = (nodeIndex ^ prevVal) | byteValue;    //negative
-                        return true;
-                    }
-                    return false;
-                }
-                //previous and current keys are not equal
-                //create a new node
-                if (this.nextNode + this.leafNodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
-                    this.nextNode = this.nextNodeArray;
-                    this.nextNodeArray += NODE_ARRAY_SIZE;
-                }
-                nodeIndex = this.nextNode;
-                this.nextNode += this.leafNodeSize;
-                this.lookupArray[nidx] = nodeIndex;
-                //push previous "compressed branch" one node further
-                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-                nidx = (nodeIndex & NODE_ARRAY_MASK) + (prevKey & this.leafNodeMask);
-                nodeArray[nidx] = (~(prevKey >>> this.leafNodeShift) << 8) | prevVal;    //negative
-            } else {
-                // -> node index is positive = go to next node
-                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-            }
-            nidx = (nodeIndex & NODE_ARRAY_MASK) + (key & this.leafNodeMask);
-            //get leaf (with compression)
-            int leafIndex = nodeArray[nidx];
-            key >>>= this.leafNodeShift;
-            if (0 == leafIndex) {
-                // -> leaf index is null = unused
-                //write current value as a "compressed branch" (negative leaf index)
-                //exit immediately because no leaf needs to be stored
-                nodeArray[nidx] = ((~key) << 8) | byteValue;    //negative
-                return true;
-            } else if (0 > leafIndex) {
-                // -> leaf index is negative = used by a single "compressed branch"
-                final int prevKey = (~leafIndex) >> 8;
-                final int prevVal = 0xff & leafIndex;
-                //previous and current keys are equal (duplicate key)
-                if (prevKey == key) {
-                    if (byteValue > prevVal) {  //putIfGreater
-                        nodeArray[nidx] = (leafIndex ^ prevVal) | byteValue;    //negative
-                        return true;
-                    }
-                    return false;
-                }
-                //previous and current keys are not equal
-                //create a new leaf
-                if (this.nextLeaf >= this.nextLeafArray) {
-                    if (this.leafArrays.length <= this.numLeafArrays) {
-                        this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                    }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                    this.leafArrays[this.numLeafArrays++] = newLeafArray;
-                    this.nextLeafArray += LEAF_ARRAY_SIZE;
-                }
-                leafIndex = this.nextLeaf;
-                this.nextLeaf += this.leafSize;
-                nodeArray[nidx] = leafIndex;
-                //push the previous "compressed branch" further to the leaf
-                final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask);
-                this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT][lidx] = (byte)prevVal;
-            }
-            final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
-            final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (key & this.leafMask);
-            final byte prevVal = leafArray[lidx];
-            if (byteValue > (0xff & prevVal)) {  //putIfGreater
-                leafArray[lidx] = (byte)byteValue;
-                return true;
-            }
-            return false;
+            //the lookup array replaces all nodes above the leaf node
+            return this.putLeafNode(this.lookupArray, key & LOOKUP_MASK, key >>> LOOKUP_SHIFT, byteValue);
         }
 
         @Override
@@ -643,10 +660,7 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 //create a new node
                 final int nodeSize = this.nodeSizeLookup[elementThis];
                 if (this.nextNode + nodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    this.addNodeArray();
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -667,95 +681,9 @@ public class KeyDepthMapTrieSpecial implements KeyDepthMap {
                 nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
             }
             nidx += elementThisLookup;
-            //go through leaf node (with compression)
-            nodeIndex = nodeArray[nidx];
+            //go through leaf node and leaf (with compression)
             key >>>= this.nodeShift;
-            if (0 == nodeIndex) {
-                // -> node index is null = unused
-                //write current key+value as a "compressed branch" (negative node index)
-                //exit immediately because no further nodes and no leaf need to be stored
-                nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
-                return true;
-            } else if (0 > nodeIndex) {
-                // -> node index is negative = used by a single "compressed branch"
-                final int prevKey = (~nodeIndex) >> 8;
-                final int prevVal = 0xff & nodeIndex;
-                //previous and current keys are equal (duplicate key)
-                if (prevKey == (int)key) {
-                    if (byteValue > prevVal) {  //putIfGreater
-                        nodeArray[nidx] = (nodeIndex ^ prevVal) | byteValue;    //negative
-                        return true;
-                    }
-                    return false;
-                }
-                //previous and current keys are not equal
-                //create a new node
-                if (this.nextNode + this.leafNodeSize > this.nextNodeArray) {
-                    if (this.nodeArrays.length <= this.numNodeArrays) {
-                        this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
-                    }
-                    this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
-                    this.nextNode = this.nextNodeArray;
-                    this.nextNodeArray += NODE_ARRAY_SIZE;
-                }
-                nodeIndex = this.nextNode;
-                this.nextNode += this.leafNodeSize;
-                nodeArray[nidx] = nodeIndex;
-                //push previous "compressed branch" one node further
-                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-                nidx = (nodeIndex & NODE_ARRAY_MASK) + (prevKey & this.leafNodeMask);
-                nodeArray[nidx] = (~(prevKey >>> this.leafNodeShift) << 8) | prevVal;    //negative
-            } else {
-                // -> node index is positive = go to next node
-                nodeArray = this.nodeArrays[nodeIndex >>> NODE_ARRAY_SHIFT];
-            }
-            nidx = (nodeIndex & NODE_ARRAY_MASK) + ((int)key & this.leafNodeMask);
-            //get leaf (with compression)
-            int leafIndex = nodeArray[nidx];
-            key >>>= this.leafNodeShift;
-            if (0 == leafIndex) {
-                // -> leaf index is null = unused
-                //write current value as a "compressed branch" (negative leaf index)
-                //exit immediately because no leaf needs to be stored
-                nodeArray[nidx] = ((~(int)key) << 8) | byteValue;    //negative
-                return true;
-            } else if (0 > leafIndex) {
-                // -> leaf index is negative = used by a single "compressed branch"
-                final int prevKey = (~leafIndex) >> 8;
-                final int prevVal = 0xff & leafIndex;
-                //previous and current keys are equal (duplicate key)
-                if (prevKey == (int)key) {
-                    if (byteValue > prevVal) {  //putIfGreater
-                        nodeArray[nidx] = (leafIndex ^ prevVal) | byteValue;    //negative
-                        return true;
-                    }
-                    return false;
-                }
-                //previous and current keys are not equal
-                //create a new leaf
-                if (this.nextLeaf >= this.nextLeafArray) {
-                    if (this.leafArrays.length <= this.numLeafArrays) {
-                        this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
-                    }
-                    final byte[] newLeafArray = new byte[LEAF_ARRAY_SIZE];
-                    this.leafArrays[this.numLeafArrays++] = newLeafArray;
-                    this.nextLeafArray += LEAF_ARRAY_SIZE;
-                }
-                leafIndex = this.nextLeaf;
-                this.nextLeaf += this.leafSize;
-                nodeArray[nidx] = leafIndex;
-                //push the previous "compressed branch" further to the leaf
-                final int lidx = (leafIndex & LEAF_ARRAY_MASK) + (prevKey & this.leafMask);
-                this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT][lidx] = (byte)prevVal;
-            }
-            final byte[] leafArray = this.leafArrays[leafIndex >>> LEAF_ARRAY_SHIFT];
-            final int lidx = (leafIndex & LEAF_ARRAY_MASK) + ((int)key & this.leafMask);
-            final byte prevVal = leafArray[lidx];
-            if (byteValue > (0xff & prevVal)) {  //putIfGreater
-                leafArray[lidx] = (byte)byteValue;
-                return true;
-            }
-            return false;
+            return this.putLeafNode(nodeArray, nidx, (int)key, byteValue);
         }
 
         @Override
@@ -0,0 +1,110 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+
+/**
+ * Creates 128-bit keys for boards whose state doesn't fit into a <tt>long</tt>
+ * (for example 6 to 8 robots on a large freestyle board).
+ * <p>
+ * The key is returned in two parts: <code>run</code> returns the lower 64 bits,
+ * and <code>getKeyHigh</code> returns the upper 64 bits of the key created by the last call of <code>run</code>.
+ * The layout of the key is the same as the layout of the <tt>long</tt> keys of <code>KeyMakerLong</code>.
+ */
+public abstract class KeyMakerLong128 {
+
+    protected long keyHigh;
+
+
+    /**
+     * Creates the 128-bit key from the values of the given <tt>state</tt>.
+     *
+     * @param state array of int values (positions of the robots on the board)
+     * @return the lower 64 bits of the key
+     */
+    public abstract long run(final int[] state);
+
+
+    /**
+     * @return the upper 64 bits of the key created by the last call of <code>run</code>
+     */
+    public final long getKeyHigh() {
+        return this.keyHigh;
+    }
+
+
+    /**
+     * Creates an instance of <tt>KeyMakerLong128</tt> that is tailored to the given parameters.
+     *
+     * @param boardNumRobots number of robots on the board (length of parameter <tt>state</tt> of method <tt>run</tt>)
+     * @param boardSizeNumBits number of bits required to store the size of the board (the 16x16 board need 8 bits)
+     * @param isBoardGoalWildcard true if the current goal is a wildcard goal (can be reached by any robot)
+     * @return the instance of KeyMakerLong128 created
+     */
+    public static KeyMakerLong128 createInstance(int boardNumRobots, int boardSizeNumBits, boolean isBoardGoalWildcard) {
+        if (boardNumRobots * boardSizeNumBits > 128) {
+            throw new IllegalArgumentException("state of " + boardNumRobots + " robots doesn't fit into 128 bits");
+        }
+        return new KeyMakerLong128All(boardNumRobots, boardSizeNumBits, isBoardGoalWildcard);
+    }
+
+
+    private static final class KeyMakerLong128All extends KeyMakerLong128 {
+        private final int[] tmpState;
+        private final int idxSort, idxLen1, idxLen2;
+        private final int s1, s64;
+        private KeyMakerLong128All(int boardNumRobots, int boardSizeNumBits, boolean isBoardGoalWildcard) {
+            this.tmpState = new int[boardNumRobots];
+            this.idxSort = this.tmpState.length - (isBoardGoalWildcard ? 0 : 1);
+            this.idxLen1 = this.tmpState.length - 1;
+            this.idxLen2 = this.tmpState.length - 2;
+            this.s1 = boardSizeNumBits;
+            this.s64 = 64 - boardSizeNumBits;
+        }
+        @Override
+        public final long run(final int[] state) {
+            assert this.tmpState.length == state.length : state.length;
+            //copy and sort state (insertion sort is fastest for up to 8 elements)
+            final int[] tmp = this.tmpState;
+            for (int i = 0;  i < this.idxSort;  ++i) {
+                final int a = state[i];
+                int j = i;
+                for ( ;  (j > 0) && (tmp[j - 1] > a);  --j) {
+                    tmp[j] = tmp[j - 1];
+                }
+                tmp[j] = a;
+            }
+            for (int i = this.idxSort;  i < state.length;  ++i) {
+                tmp[i] = state[i];
+            }
+            //pack state into two long values
+            long high = 0;
+            long low = tmp[this.idxLen1];
+            for (int i = this.idxLen2;  i >= 0;  --i) {
+                high = (high << this.s1) | (low >>> this.s64);
+                low = (low << this.s1) | tmp[i];
+            }
+            this.keyHigh = high;
+            return low;
+        }
+    }
+
+
+}
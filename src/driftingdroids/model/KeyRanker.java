@@ -0,0 +1,117 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * Maps the keys generated by <code>KeyMakerInt</code> and <code>KeyMakerLong</code>
+ * to a dense range of numbers <code>0 ... getNumRanks() - 1</code>.
+ * <p>
+ * The positions of the non-goal robots are unique and sorted, so they are
+ * a combination of <tt>numRobots - 1</tt> out of the free cells of the board,
+ * which is ranked in colexicographic order: <tt>C(p0,1) + C(p1,2) + C(p2,3) + ...</tt>
+ * The position of the goal robot is added as the least significant "digit".
+ * For 4 robots on the 16x16 board this gives 252 * C(252,3) = 664 million ranks,
+ * instead of the 2^32 possible <tt>int</tt> keys.
+ * The keys of a wildcard goal (all robots sorted) are a subset of these ranks.
+ */
+public final class KeyRanker {
+
+    public static final long MAX_RANKS = 1L << 36;
+
+    private final int numRobots, s1, mask;
+    private final int[] cellIndex;          //position -> index among the free cells of the board
+    private final long[][] binomial;        //binomial[k][x] = C(x,k)
+    private final long numFreeCells;
+    private final long numRanks;
+
+
+
+    private KeyRanker(final Board board, final int[] cellIndex, final int numFreeCells, final long numRanks) {
+        this.numRobots = board.getNumRobots();
+        this.s1 = board.sizeNumBits;
+        this.mask = (1 << board.sizeNumBits) - 1;
+        this.cellIndex = cellIndex;
+        this.numFreeCells = numFreeCells;
+        this.numRanks = numRanks;
+        this.binomial = new long[this.numRobots][numFreeCells];
+        for (int x = 0;  x < numFreeCells;  ++x) {
+            this.binomial[0][x] = 1;
+            for (int k = 1;  k < this.numRobots;  ++k) {
+                this.binomial[k][x] = ((0 == x) ? 0 : this.binomial[k][x - 1] + this.binomial[k - 1][x - 1]);
+            }
+        }
+    }
+
+
+
+    /**
+     * Creates an instance of <tt>KeyRanker</tt> for the given board.
+     *
+     * @param board the board that is to be solved
+     * @return the instance of KeyRanker created,
+     * or <code>null</code> if the board has more than <code>MAX_RANKS</code> states
+     */
+    public static KeyRanker createInstance(final Board board) {
+        final int[] cellIndex = new int[1 << board.sizeNumBits];
+        int numFreeCells = 0;
+        for (int pos = 0;  pos < board.size;  ++pos) {
+            if (false == board.isObstacle(pos)) {
+                cellIndex[pos] = numFreeCells++;
+            }
+        }
+        //numFreeCells * C(numFreeCells, numRobots - 1)
+        long combinations = 1;
+        for (int k = 1;  k < board.getNumRobots();  ++k) {
+            if ((double)combinations * (numFreeCells - k + 1) > MAX_RANKS) {
+                return null;
+            }
+            combinations = combinations * (numFreeCells - k + 1) / k;   //exact: this is C(numFreeCells, k)
+        }
+        if (((double)combinations * numFreeCells > MAX_RANKS) || (board.sizeNumBits * board.getNumRobots() > 64)) {
+            return null;
+        }
+        return new KeyRanker(board, cellIndex, numFreeCells, combinations * numFreeCells);
+    }
+
+
+    /**
+     * @return the number of ranks, that is the largest rank + 1
+     */
+    public long getNumRanks() {
+        return this.numRanks;
+    }
+
+
+    /**
+     * Converts a key to its rank.
+     *
+     * @param key generated by <code>KeyMakerInt</code> (unsigned) or <code>KeyMakerLong</code>
+     * @return the rank of the key
+     */
+    public long rank(long key) {
+        long result = 0;
+        for (int k = 1;  k < this.numRobots;  ++k) {
+            result += this.binomial[k][this.cellIndex[(int)key & this.mask]];
+            key >>>= this.s1;
+        }
+        return result * this.numFreeCells + this.cellIndex[(int)key & this.mask];
+    }
+
+}
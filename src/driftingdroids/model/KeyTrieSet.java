@@ -142,6 +142,7 @@ public final class KeyTrieSet {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
                     this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    SolverEvents.INSTANCE.arrayAllocated(this, "node", NODE_ARRAY_SIZE * 4L, this.getBytesAllocated());
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -184,6 +185,7 @@ public final class KeyTrieSet {
                     this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                 }
                 this.leafArrays[this.numLeafArrays++] = new int[LEAF_ARRAY_SIZE];
+                SolverEvents.INSTANCE.arrayAllocated(this, "leaf", LEAF_ARRAY_SIZE * 4L, this.getBytesAllocated());
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
             leafIndex = this.nextLeaf;
@@ -232,6 +234,7 @@ public final class KeyTrieSet {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
                     this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    SolverEvents.INSTANCE.arrayAllocated(this, "node", NODE_ARRAY_SIZE * 4L, this.getBytesAllocated());
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -268,6 +271,7 @@ public final class KeyTrieSet {
                         this.nodeArrays = Arrays.copyOf(this.nodeArrays, this.nodeArrays.length << 1);
                     }
                     this.nodeArrays[this.numNodeArrays++] = new int[NODE_ARRAY_SIZE];
+                    SolverEvents.INSTANCE.arrayAllocated(this, "node", NODE_ARRAY_SIZE * 4L, this.getBytesAllocated());
                     this.nextNode = this.nextNodeArray;
                     this.nextNodeArray += NODE_ARRAY_SIZE;
                 }
@@ -310,6 +314,7 @@ public final class KeyTrieSet {
                     this.leafArrays = Arrays.copyOf(this.leafArrays, this.leafArrays.length << 1);
                 }
                 this.leafArrays[this.numLeafArrays++] = new int[LEAF_ARRAY_SIZE];
+                SolverEvents.INSTANCE.arrayAllocated(this, "leaf", LEAF_ARRAY_SIZE * 4L, this.getBytesAllocated());
                 this.nextLeafArray += LEAF_ARRAY_SIZE;
             }
             leafIndex = this.nextLeaf;
@@ -17,9 +17,6 @@
 
 package driftingdroids.model;
 
-import java.util.HashMap;
-import java.util.Map;
-
 
 
 public class Move {
@@ -29,41 +26,110 @@ public class Move {
     public final int oldPosition;
     public final int newPosition;
     public final int direction;
-    public final Map<Integer,Integer> pathMap;  //key=position, value=PATH
     
     public static final int PATH_NORTH = 1 << Board.NORTH;
     public static final int PATH_EAST  = 1 << Board.EAST;
     public static final int PATH_SOUTH = 1 << Board.SOUTH;
     public static final int PATH_WEST  = 1 << Board.WEST;
     
-    public Move(Board board, int[] oldPositions, int[] newPositions, int stepNumber) {
+    //compact encoding of a move in a single int value:
+    //bits 0-1 = direction, bits 2-13 = newPosition, bits 14-25 = oldPosition, bits 26-29 = robotNumber
+    private static final int CODE_POS_BITS = 12;    //Board.SIZE_MAX = 4096
+    private static final int CODE_POS_MASK = (1 << CODE_POS_BITS) - 1;
+    private static final int CODE_NEW_SHIFT = 2;
+    private static final int CODE_OLD_SHIFT = CODE_NEW_SHIFT + CODE_POS_BITS;
+    private static final int CODE_ROBOT_SHIFT = CODE_OLD_SHIFT + CODE_POS_BITS;
+    
+    /**
+     * Packs the attributes of a move into a single <tt>int</tt> value.
+     * 
+     * @param robotNumber the robot that is moved
+     * @param oldPosition the position of the robot before the move
+     * @param newPosition the position of the robot after the move
+     * @param direction the direction of the move (Board.NORTH, Board.EAST, Board.SOUTH or Board.WEST)
+     * @return the move code
+     */
+    public static int encode(final int robotNumber, final int oldPosition, final int newPosition, final int direction) {
+        return (robotNumber << CODE_ROBOT_SHIFT) | (oldPosition << CODE_OLD_SHIFT) | (newPosition << CODE_NEW_SHIFT) | direction;
+    }
+    public static int decodeRobotNumber(final int code) { return code >>> CODE_ROBOT_SHIFT; }
+    public static int decodeOldPosition(final int code) { return (code >>> CODE_OLD_SHIFT) & CODE_POS_MASK; }
+    public static int decodeNewPosition(final int code) { return (code >>> CODE_NEW_SHIFT) & CODE_POS_MASK; }
+    public static int decodeDirection(final int code)   { return code & 3; }
+    
+    /**
+     * Determines how the robot passes or touches the specified position during the move.
+     * This is the allocation-free equivalent of <code>new Move(board, code, 0).getPath(position)</code>.
+     * 
+     * @param board the board of the move
+     * @param code the move code (see <code>encode</code>)
+     * @param position the position on the board
+     * @return the PATH_* bits of the position (0 if the position is not on the path)
+     */
+    public static int getPath(final Board board, final int code, final int position) {
+        final int dir = decodeDirection(code);
+        final int posIncr = board.directionIncrement[dir];
+        final int diffPos = position - decodeOldPosition(code);
+        if (0 != diffPos % posIncr) {
+            return 0;
+        }
+        final int step = diffPos / posIncr;
+        final int lastStep = (decodeNewPosition(code) - decodeOldPosition(code)) / posIncr;
+        if ((step < 0) || (step > lastStep)) {
+            return 0;
+        }
+        final int pathStart = 1 << dir;
+        final int pathEnd = 1 << (dir ^ 2);
+        return (0 == step ? pathStart : (lastStep == step ? pathEnd : (pathStart | pathEnd)));
+    }
+    
+    public Move(Board board, int code, int stepNumber) {
         this.board = board;
         this.stepNumber = stepNumber;
-        int robotNumber=0, oldPosition=0, newPosition=0;
+        this.robotNumber = decodeRobotNumber(code);
+        this.oldPosition = decodeOldPosition(code);
+        this.newPosition = decodeNewPosition(code);
+        this.direction = decodeDirection(code);
+    }
+    
+    public Move(Board board, int[] oldPositions, int[] newPositions, int stepNumber) {
+        this(board, encodeStates(oldPositions, newPositions, board), stepNumber);
+    }
+    
+    private static int encodeStates(final int[] oldPositions, final int[] newPositions, final Board board) {
         for (int robo = 0; robo < oldPositions.length; ++robo) {
             if (oldPositions[robo] != newPositions[robo]) {
-                robotNumber = robo;
-                oldPosition = oldPositions[robo];
-                newPosition = newPositions[robo];
-                break;
+                return encode(robo, oldPositions[robo], newPositions[robo], board.getDirection(newPositions[robo] - oldPositions[robo]));
             }
         }
-        this.robotNumber = robotNumber;
-        this.oldPosition = oldPosition;
-        this.newPosition = newPosition;
-        
-        this.pathMap = new HashMap<Integer, Integer>();
-        final int diffPos = newPosition - oldPosition;
-        this.direction = board.getDirection(diffPos);
-        final int pathStart = 1 << this.direction;
-        final int pathEnd = 1 << board.getDirection(-diffPos);
-        final int posIncr = board.directionIncrement[this.direction];
-        int i = oldPosition;
-        this.pathMap.put(Integer.valueOf(i), Integer.valueOf(pathStart));
-        for (i += posIncr ; i != newPosition; i += posIncr) {
-            this.pathMap.put(Integer.valueOf(i), Integer.valueOf(pathStart + pathEnd));
+        return 0;
+    }
+    
+    /**
+     * @return the compact encoding of this move (see <code>encode</code>)
+     */
+    public int getCode() {
+        return encode(this.robotNumber, this.oldPosition, this.newPosition, this.direction);
+    }
+    
+    /**
+     * @param position a position on the board
+     * @return the PATH_* bits that describe how the robot passes the position (0 if the position is not on the path)
+     */
+    public int getPath(final int position) {
+        return getPath(this.board, this.getCode(), position);
+    }
+    
+    /**
+     * @return all positions on the path of the robot, from oldPosition to newPosition (computed on demand)
+     */
+    public int[] getPathPositions() {
+        final int posIncr = this.board.directionIncrement[this.direction];
+        final int[] result = new int[(this.newPosition - this.oldPosition) / posIncr + 1];
+        for (int i = 0, pos = this.oldPosition;  i < result.length;  ++i, pos += posIncr) {
+            result[i] = pos;
         }
-        this.pathMap.put(Integer.valueOf(i), Integer.valueOf(pathEnd));
+        return result;
     }
     
     /* (non-Javadoc)
@@ -104,7 +170,7 @@ public class Move {
     
     public String strRobotDirection() {
         final String dir;
-        switch (this.pathMap.get(Integer.valueOf(this.oldPosition)).intValue()) {
+        switch (1 << this.direction) {
         case PATH_NORTH : dir = "N"; break; //up    / NORTH
         case PATH_EAST  : dir = "E"; break; //right / EAST
         case PATH_SOUTH : dir = "S"; break; //down  / SOUTH
@@ -116,7 +182,7 @@ public class Move {
     
     public String strDirectionL10N() {
         final String dir;
-        switch (this.pathMap.get(Integer.valueOf(this.oldPosition)).intValue()) {
+        switch (1 << this.direction) {
         case PATH_NORTH : dir = Board.L10N.getString("move.direction.N.text"); break;   //up    / NORTH
         case PATH_EAST  : dir = Board.L10N.getString("move.direction.E.text"); break;   //right / EAST
         case PATH_SOUTH : dir = Board.L10N.getString("move.direction.S.text"); break;   //down  / SOUTH
@@ -128,7 +194,7 @@ public class Move {
     
     public String strDirectionL10Nlong() {
         final String dir;
-        switch (this.pathMap.get(Integer.valueOf(this.oldPosition)).intValue()) {
+        switch (1 << this.direction) {
         case PATH_NORTH : dir = Board.L10N.getString("move.direction.North.text");  break;   //up
         case PATH_EAST  : dir = Board.L10N.getString("move.direction.East.text");   break;   //right
         case PATH_SOUTH : dir = Board.L10N.getString("move.direction.South.text");  break;   //down
@@ -0,0 +1,357 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+
+
+/**
+ * Generates puzzles that need at least <tt>minMoves</tt> moves, on the board of a template game.
+ * <p>
+ * Several threads sample random robot positions and goals and solve them. The solvers use
+ * a <code>SolutionCollector</code> that keeps only the first solution found, so the IDDFS
+ * search stops as soon as the optimal number of moves is known: a candidate that is shorter
+ * than <tt>minMoves</tt> costs only the iterations up to its own number of moves.
+ * <p>
+ * The candidates that come close to <tt>minMoves</tt> become seeds. A part of the samples is
+ * generated retrograde from the seeds: some robots are put on positions from where they would
+ * move to their position in the seed. Such a predecessor needs at most one move more than the
+ * seed for each robot moved back, so it's a much better candidate than a random placement.
+ * <p>
+ * Each new puzzle is written to the corpus as a line "<tt>gameID TAB moves</tt>".
+ */
+public final class PuzzleGenerator {
+
+    private static final int MAX_SEEDS = 10000;
+
+    private final Board template;
+    private final int minMoves;
+    private final int[] goalPositions;
+
+    private int optThreads = Runtime.getRuntime().availableProcessors();
+    private double optSeedFraction = 0.5;
+    private int optSeedMargin = 2;
+    private int optRetroMoves = 2;
+    private long optRandomSeed = System.nanoTime();
+    private Instrumentation instrumentation = Instrumentation.getDefault();
+
+    //shared by the worker threads, guarded by "this"
+    private final Set<String> knownGameIDs = new HashSet<String>();
+    private final List<int[]> seeds = new ArrayList<int[]>();     //robot positions, then goal position
+    private final Random seedsRandom = new Random();
+    private int[] movesHistogram = new int[0];
+    private long numSamples;
+    private int numPuzzles, numPuzzlesWanted;
+    private Writer corpus;
+    private IOException corpusException;
+
+
+
+    /**
+     * Constructs a generator for the board of the template game.
+     *
+     * @param template the board (quadrants and number of robots) of the puzzles
+     * @param minMoves minimum number of moves of the puzzles
+     */
+    public PuzzleGenerator(final Board template, final int minMoves) {
+        if (true == template.isFreestyleBoard()) {
+            throw new IllegalArgumentException("a freestyle board has no game ID");
+        }
+        this.template = Board.createClone(template);
+        this.minMoves = minMoves;
+        //the goals that can be used with the number of robots of this board
+        final List<Integer> goals = new ArrayList<Integer>();
+        for (int pos = 0;  pos < template.size;  ++pos) {
+            final Board.Goal goal = template.getGoalAt(pos);
+            if ((null != goal) && (goal.robotNumber < template.getNumRobots())) {
+                goals.add(Integer.valueOf(pos));
+            }
+        }
+        this.goalPositions = new int[goals.size()];
+        for (int i = 0;  i < this.goalPositions.length;  ++i) {
+            this.goalPositions[i] = goals.get(i).intValue();
+        }
+        if (0 == this.goalPositions.length) {
+            throw new IllegalArgumentException("the board has no goals");
+        }
+    }
+
+
+
+    public void setOptionThreads(final int threads) {
+        this.optThreads = Math.max(1, threads);
+    }
+
+    /**
+     * @param fraction probability that a candidate is generated retrograde from a seed (if there are seeds)
+     */
+    public void setOptionSeedFraction(final double fraction) {
+        this.optSeedFraction = fraction;
+    }
+
+    /**
+     * @param margin the candidates with at least <tt>minMoves - margin</tt> moves become seeds
+     */
+    public void setOptionSeedMargin(final int margin) {
+        this.optSeedMargin = Math.max(0, margin);
+    }
+
+    /**
+     * @param moves maximum number of robots moved back when a candidate is generated from a seed
+     */
+    public void setOptionRetroMoves(final int moves) {
+        this.optRetroMoves = Math.max(1, moves);
+    }
+
+    public void setOptionRandomSeed(final long seed) {
+        this.optRandomSeed = seed;
+    }
+
+    public void setInstrumentation(final Instrumentation instrumentation) {
+        this.instrumentation = (null == instrumentation ? Instrumentation.NONE : instrumentation);
+    }
+
+
+
+    /**
+     * Adds a known puzzle, for example from an existing corpus file.
+     * It's used as a seed, and it won't be written to the corpus again.
+     *
+     * @param gameID the game ID of the puzzle
+     * @return <code>false</code> if the game ID is not valid or not on the board of this generator
+     */
+    public synchronized boolean addSeed(final String gameID) {
+        final Board board = Board.createBoardGameID(gameID);
+        //the first 4 characters of the game ID are the quadrants of the board
+        if ((null == board) || (board.getNumRobots() != this.template.getNumRobots())
+                || (false == board.getGameID().regionMatches(0, this.template.getGameID(), 0, 4))) {
+            return false;
+        }
+        this.knownGameIDs.add(board.getGameID());
+        this.addSeed(board);
+        return true;
+    }
+
+
+    /**
+     * Generates puzzles until <tt>numPuzzles</tt> new puzzles have been written to the corpus,
+     * or until the time limit is reached.
+     *
+     * @param numPuzzles number of puzzles to be generated
+     * @param maxMillis time limit in milliseconds, or 0 for no limit
+     * @param corpus receives one line for each new puzzle, it's flushed after each line
+     * @return number of puzzles written to the corpus
+     * @throws InterruptedException if the current thread was interrupted
+     * @throws IOException if writing to the corpus failed
+     */
+    public int run(final int numPuzzles, final long maxMillis, final Writer corpus) throws InterruptedException, IOException {
+        synchronized (this) {
+            this.numPuzzles = 0;
+            this.numPuzzlesWanted = numPuzzles;
+            this.corpus = corpus;
+            this.corpusException = null;
+        }
+        final long startNanos = System.nanoTime();
+        final Thread[] workers = new Thread[this.optThreads];
+        for (int i = 0;  i < workers.length;  ++i) {
+            final long randomSeed = this.optRandomSeed + i;
+            workers[i] = new Thread("PuzzleGenerator-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        PuzzleGenerator.this.runWorker(new Random(randomSeed));
+                    } catch (InterruptedException e) {
+                        //finished
+                    }
+                }
+            };
+            workers[i].setDaemon(true);
+            workers[i].start();
+        }
+        try {
+            for (final Thread worker : workers) {
+                if (0 == maxMillis) {
+                    worker.join();
+                } else {
+                    final long millisLeft = maxMillis - (System.nanoTime() - startNanos) / 1000000L;
+                    if (millisLeft > 0) {
+                        worker.join(millisLeft);
+                    }
+                }
+            }
+        } finally {
+            for (final Thread worker : workers) {
+                worker.interrupt();     //time limit, or the current thread was interrupted
+            }
+            for (final Thread worker : workers) {
+                worker.join();
+            }
+        }
+        synchronized (this) {
+            this.corpus = null;
+            if (null != this.corpusException) {
+                throw this.corpusException;
+            }
+            return this.numPuzzles;
+        }
+    }
+
+
+    /**
+     * @return number of candidates solved
+     */
+    public synchronized long getNumSamples() {
+        return this.numSamples;
+    }
+
+
+    /**
+     * @return number of candidates solved, indexed by their number of moves
+     */
+    public synchronized int[] getMovesHistogram() {
+        return this.movesHistogram.clone();
+    }
+
+
+
+    private void runWorker(final Random random) throws InterruptedException {
+        final Board board = Board.createClone(this.template);
+        final SolutionCollector collector = new SolutionCollector(null, 1);    //the first solution found is optimal
+        while (false == this.isFinished()) {
+            if (Thread.interrupted()) {
+                throw new InterruptedException();
+            }
+            final int[] seed = ((random.nextDouble() < this.optSeedFraction) ? this.getSeed() : null);
+            final boolean isValid = ((null == seed) ? this.setRandom(board, random) : this.setRetrograde(board, seed, random));
+            if ((false == isValid) || (true == board.isSolution01())) {
+                continue;
+            }
+            final Solver solver = Solver.createInstance(board);
+            solver.setInstrumentation(Instrumentation.NONE);
+            solver.setOptionSolutionCollector(collector);
+            final int moves = solver.execute().get(0).size();
+            this.candidateSolved(board, moves);
+        }
+    }
+
+
+    private boolean setRandom(final Board board, final Random random) {
+        final int[] robots = new int[board.getNumRobots()];
+        for (int i = 0;  i < robots.length;  ++i) {
+            robots[i] = random.nextInt(board.size);
+        }
+        return (true == board.setRobots(robots)) && (true == board.setGoal(this.goalPositions[random.nextInt(this.goalPositions.length)]));
+    }
+
+
+    private boolean setRetrograde(final Board board, final int[] seed, final Random random) {
+        //move some robots back: each one to a position from where it would move to its position in the seed
+        final int numRobots = board.getNumRobots();
+        final int[] robots = Arrays.copyOf(seed, numRobots);
+        final boolean[][] walls = board.getWalls();
+        final int[] candidates = new int[Math.max(board.width, board.height)];
+        final int numRetro = 1 + random.nextInt(this.optRetroMoves);
+        for (int retro = 0, tries = 0;  (retro < numRetro) && (tries < 100);  ++tries) {
+            final int robo = random.nextInt(numRobots);
+            final int dir = random.nextInt(4);
+            final int dirIncr = board.directionIncrement[dir];
+            final int pos = robots[robo];
+            //the robot must be stopped at pos when it moves in direction dir
+            if ((false == walls[dir][pos]) && (indexOf(robots, pos + dirIncr) < 0)) {
+                continue;
+            }
+            int numCandidates = 0;
+            for (int prev = pos - dirIncr;  (prev >= 0) && (prev < board.size) && (false == walls[dir][prev]) && (indexOf(robots, prev) < 0);  prev -= dirIncr) {
+                candidates[numCandidates++] = prev;
+            }
+            if (0 < numCandidates) {
+                robots[robo] = candidates[random.nextInt(numCandidates)];
+                ++retro;
+            }
+        }
+        return (true == board.setRobots(robots)) && (true == board.setGoal(seed[numRobots]));
+    }
+
+
+    private static int indexOf(final int[] robots, final int pos) {
+        for (int i = 0;  i < robots.length;  ++i) {
+            if (robots[i] == pos) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+
+    private synchronized boolean isFinished() {
+        return (this.numPuzzles >= this.numPuzzlesWanted) || (null != this.corpusException);
+    }
+
+
+    private synchronized int[] getSeed() {
+        return (this.seeds.isEmpty() ? null : this.seeds.get(this.seedsRandom.nextInt(this.seeds.size())));
+    }
+
+
+    private void addSeed(final Board board) {
+        final int[] robots = board.getRobotPositions();
+        final int[] seed = Arrays.copyOf(robots, robots.length + 1);
+        seed[robots.length] = board.getGoal().position;
+        if (this.seeds.size() < MAX_SEEDS) {
+            this.seeds.add(seed);
+        } else {
+            this.seeds.set(this.seedsRandom.nextInt(MAX_SEEDS), seed);
+        }
+    }
+
+
+    private synchronized void candidateSolved(final Board board, final int moves) {
+        ++this.numSamples;
+        if (moves >= this.movesHistogram.length) {
+            this.movesHistogram = Arrays.copyOf(this.movesHistogram, moves + 1);
+        }
+        ++this.movesHistogram[moves];
+        if (moves >= this.minMoves - this.optSeedMargin) {
+            this.addSeed(board);
+        }
+        if ((moves >= this.minMoves) && (this.numPuzzles < this.numPuzzlesWanted) && (null == this.corpusException)) {
+            final String gameID = board.getGameID();
+            if (true == this.knownGameIDs.add(gameID)) {
+                try {
+                    this.corpus.write(gameID + "\t" + moves + "\n");
+                    this.corpus.flush();
+                    ++this.numPuzzles;
+                } catch (IOException e) {
+                    this.corpusException = e;
+                }
+                if (true == this.instrumentation.isEnabled(Instrumentation.Level.SUMMARY)) {
+                    this.instrumentation.message(Instrumentation.Level.SUMMARY, "puzzle " + this.numPuzzles + "/" + this.numPuzzlesWanted +
+                            ": " + gameID + " moves=" + moves + " samples=" + this.numSamples + " seeds=" + this.seeds.size());
+                }
+            }
+        }
+    }
+}
@@ -17,13 +17,8 @@
 
 package driftingdroids.model;
 
-import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Deque;
 import java.util.Formatter;
-import java.util.HashSet;
-import java.util.LinkedList;
-import java.util.List;
 import java.util.Set;
 import java.util.TreeSet;
 
@@ -31,14 +26,28 @@ import java.util.TreeSet;
 
 public class Solution implements Comparable<Solution> {
     private final Board board;
-    private final List<Move> movesList;
+    private int[] moveCodes;    //compact encoding of the moves (see Move.encode)
+    private int numMoves;
+    private Move[] moves;       //Move objects are created on demand from moveCodes
     private int moveIndex;
     private int numColors;
     private int numColorChanges;
     
     public Solution(Board board) {
         this.board = board;
-        this.movesList = new ArrayList<Move>();
+        this.moveCodes = new int[16];
+        this.numMoves = 0;
+        this.moves = null;
+        this.moveIndex = 0;
+        this.numColors = 0;
+        this.numColorChanges = 0;
+    }
+    
+    Solution(final Board board, final int[] moveCodes, final int numMoves) {
+        this.board = board;
+        this.moveCodes = Arrays.copyOf(moveCodes, Math.max(numMoves, 1));
+        this.numMoves = numMoves;
+        this.moves = null;
         this.moveIndex = 0;
         this.numColors = 0;
         this.numColorChanges = 0;
@@ -46,17 +55,52 @@ public class Solution implements Comparable<Solution> {
     
     
     public void add(final Move move) {
-        this.movesList.add(move);
+        if (this.numMoves >= this.moveCodes.length) {
+            this.moveCodes = Arrays.copyOf(this.moveCodes, this.moveCodes.length << 1);
+        }
+        this.moveCodes[this.numMoves++] = move.getCode();
+        this.moves = null;
     }
     
     public int size() {
-        return this.movesList.size();
+        return this.numMoves;
+    }
+    
+    int[] getMoveCodes() {
+        return Arrays.copyOf(this.moveCodes, this.numMoves);
+    }
+    
+    private Move getMove(final int index) {
+        if (null == this.moves) {
+            this.moves = new Move[this.numMoves];
+        }
+        Move move = this.moves[index];
+        if (null == move) {
+            move = new Move(this.board, this.moveCodes[index], index);
+            this.moves[index] = move;
+        }
+        return move;
+    }
+    
+    private int getRobotsMovedBits() {
+        int result = 0;
+        for (int i = 0;  i < this.numMoves;  ++i) {
+            result |= 1 << Move.decodeRobotNumber(this.moveCodes[i]);
+        }
+        return result;
+    }
+    
+    int getNumRobotsMoved() {
+        return Integer.bitCount(this.getRobotsMovedBits());
     }
     
     public Set<Integer> getRobotsMoved() {
         final TreeSet<Integer> result = new TreeSet<Integer>(); //sorted set
-        for (Move move : this.movesList) {
-            result.add(Integer.valueOf(move.robotNumber));
+        final int robotsMoved = this.getRobotsMovedBits();
+        for (int robot = 0;  robot < Integer.SIZE;  ++robot) {
+            if (0 != (robotsMoved & (1 << robot))) {
+                result.add(Integer.valueOf(robot));
+            }
         }
         return result;
     }
@@ -69,11 +113,13 @@ public class Solution implements Comparable<Solution> {
         boolean result = false;
         int[] directions = this.board.getRobotPositions().clone();
         Arrays.fill(directions, -1);
-        for (Move move : this.movesList) {
-            if ((-1 == directions[move.robotNumber]) || (move.direction != (3 & (directions[move.robotNumber] + 2)))) {
-                directions[move.robotNumber] = move.direction;
+        for (int i = 0;  i < this.numMoves;  ++i) {
+            final int robot = Move.decodeRobotNumber(this.moveCodes[i]);
+            final int direction = Move.decodeDirection(this.moveCodes[i]);
+            if ((-1 == directions[robot]) || (direction != (3 & (directions[robot] + 2)))) {
+                directions[robot] = direction;
             } else {
-                if ((queryMove == null) || (queryMove.equals(move))) {
+                if ((queryMove == null) || ((queryMove.stepNumber == i) && (queryMove.getCode() == this.moveCodes[i]))) {
                     result = true;
                     break;
                 }
@@ -87,8 +133,8 @@ public class Solution implements Comparable<Solution> {
     }
     
     public Move getCurrentMove() {
-        if ((this.moveIndex >= 0) && (this.moveIndex < this.movesList.size())) {
-            return this.movesList.get(this.moveIndex);
+        if ((this.moveIndex >= 0) && (this.moveIndex < this.numMoves)) {
+            return this.getMove(this.moveIndex);
         } else {
             return null;
         }
@@ -110,8 +156,8 @@ public class Solution implements Comparable<Solution> {
     }
     
     public Move getLastMove() {
-        if (this.movesList.size() > 0) {
-            return this.movesList.get(this.movesList.size() - 1);
+        if (this.numMoves > 0) {
+            return this.getMove(this.numMoves - 1);
         } else {
             return null;
         }
@@ -119,12 +165,10 @@ public class Solution implements Comparable<Solution> {
     
     public String toMovelistString() {
         StringBuilder s = new StringBuilder();
-        s.append("solution: size=").append(this.movesList.size()).append(" *****");
-        if (this.movesList.size() > 0) {
-            for (Move mov : this.movesList) {
-                s.append(' ');
-                s.append(mov.strRobotDirection());
-            }
+        s.append("solution: size=").append(this.numMoves).append(" *****");
+        for (int i = 0;  i < this.numMoves;  ++i) {
+            s.append(' ');
+            s.append(this.getMove(i).strRobotDirection());
         }
         s.append(" *****");
         return s.toString();
@@ -179,7 +223,16 @@ public class Solution implements Comparable<Solution> {
     @Override
     public boolean equals(Object obj) {
         if (obj instanceof Solution) {
-            return this.movesList.equals(((Solution)obj).movesList);
+            final Solution other = (Solution)obj;
+            if (this.numMoves != other.numMoves) {
+                return false;
+            }
+            for (int i = 0;  i < this.numMoves;  ++i) {
+                if (this.moveCodes[i] != other.moveCodes[i]) {
+                    return false;
+                }
+            }
+            return true;
         } else {
             return false;
         }
@@ -188,118 +241,266 @@ public class Solution implements Comparable<Solution> {
     @Override
     public int hashCode() {
         int result = 0;
-        for (final Move move : this.movesList) {
-            result = 1000003 * result + move.hashCode();
+        for (int i = 0;  i < this.numMoves;  ++i) {
+            result = 1000003 * result + this.moveCodes[i];
         }
         return result;
     }
 
     // set attributes used for sorting of solutions and swap some moves to minimize color changes
     public Solution finish() {
-        final List<List<Move>> colorSolution = this.determineColorChanges();
+        return this.finish(Instrumentation.getDefault());
+    }
+
+    Solution finish(final Instrumentation instr) {
         // set the attributes used for sorting of solutions
-        this.numColorChanges = colorSolution.size();
-        this.numColors = this.getRobotsMoved().size();
+        this.numColorChanges = this.countColorChanges();
+        this.numColors = Integer.bitCount(this.getRobotsMovedBits());
         // for solution01 the order of moves is important and should not be changed here
         if (false == this.board.isSolution01()) {
-            this.minimizeColorChanges(colorSolution);
+            this.minimizeColorChanges(instr);
         }
         return this;
     }
 
-    // transform Solution to list of lists of moves, grouped by colors
-    private List<List<Move>> determineColorChanges() {
-        final List<List<Move>> colorSolution = new ArrayList<List<Move>>();
-        LinkedList<Move> moveList = new LinkedList<Move>();
-        for (final Move move : this.movesList) {
-            if ((false == moveList.isEmpty()) && (moveList.getLast().robotNumber != move.robotNumber)) { // color change
-                colorSolution.add(moveList);
-                moveList = new LinkedList<Move>();
+    // number of runs of moves of the same robot color
+    private int countColorChanges() {
+        int result = 1;
+        for (int i = 1;  i < this.numMoves;  ++i) {
+            if (Move.decodeRobotNumber(this.moveCodes[i - 1]) != Move.decodeRobotNumber(this.moveCodes[i])) { // color change
+                ++result;
             }
-            moveList.add(move);
         }
-        colorSolution.add(moveList);
-        return colorSolution;
+        return result;
+    }
+
+    // check if two moves can be transposed: moveFirst is currently executed before moveSecond
+    private boolean isCommutable(final int moveFirst, final int moveSecond) {
+        final int old1 = Move.decodeOldPosition(moveFirst),  new1 = Move.decodeNewPosition(moveFirst);
+        final int old2 = Move.decodeOldPosition(moveSecond), new2 = Move.decodeNewPosition(moveSecond);
+        if ((0 != Move.getPath(this.board, moveFirst, new2)) ||
+            (0 != Move.getPath(this.board, moveSecond, old1))) {
+            return false; // no swap - blocked path
+        }
+        if ((new1 == old2 - this.board.directionIncrement[Move.decodeDirection(moveFirst)]) ||
+            (new2 == new1 - this.board.directionIncrement[Move.decodeDirection(moveSecond)])) {
+            return false; // no swap - blocker position
+        }
+        return true;
     }
 
-    // prettify the solution: transpose some moves and thus create longer runs of moves of the same robot color
-    private void minimizeColorChanges(List<List<Move>> thisSolution) {
+    // prettify the solution: transpose some moves and thus create longer runs of moves of the same robot color.
+    // this is a breadth-first search over the permutations of the runs of same-colored moves.
+    // adjacent runs of the same color form a group that is moved as a whole.
+    private void minimizeColorChanges(final Instrumentation instr) {
         final long startNano = System.nanoTime();
         if (this.numColors == this.numColorChanges) {
-            System.out.println("minimizeColorChanges: no search, already at global minimum " + this.numColorChanges);
+            if (true == instr.isEnabled(Instrumentation.Level.SUMMARY)) {
+                instr.message(Instrumentation.Level.SUMMARY, "minimizeColorChanges: no search, already at global minimum " + this.numColorChanges);
+            }
             return; // nothing to be minimized here
         }
-        final Set<List<List<Move>>> knownSet = new HashSet<List<List<Move>>>();
-        final Deque<List<List<Move>>> todoList = new LinkedList<List<List<Move>>>();
-        knownSet.add(thisSolution);
-        todoList.addLast(thisSolution);
+        final int numRuns = this.numColorChanges;
+        if ((numRuns < 3) || (numRuns > Long.SIZE)) {
+            return; // the last run is never swapped, and a run set must fit into the bits of a long
+        }
+        // the runs of the original solution: first move and color
+        final int[] runStart = new int[numRuns + 1];
+        final int[] runColor = new int[numRuns];
+        for (int i = 0, run = 0;  i < this.numMoves;  ++i) {
+            final int color = Move.decodeRobotNumber(this.moveCodes[i]);
+            if ((0 == run) || (runColor[run - 1] != color)) {
+                runStart[run] = i;
+                runColor[run++] = color;
+            }
+        }
+        runStart[numRuns] = this.numMoves;
+        // precompute the pairwise commutation of runs:
+        // bit b of runCommute[a] is set if all moves of run a can be transposed with all moves of run b (a before b)
+        final long[] runCommute = new long[numRuns];
+        for (int a = 0;  a < numRuns;  ++a) {
+            for (int b = 0;  b < numRuns;  ++b) {
+                boolean commute = (a != b);
+                for (int i = runStart[a];  commute && (i < runStart[a + 1]);  ++i) {
+                    for (int j = runStart[b];  commute && (j < runStart[b + 1]);  ++j) {
+                        commute = this.isCommutable(this.moveCodes[i], this.moveCodes[j]);
+                    }
+                }
+                if (true == commute) {
+                    runCommute[a] |= 1L << b;
+                }
+            }
+        }
+        // breadth-first search: the set of known run orders doubles as the queue of orders to be expanded
+        final RunOrderSet knownSet = new RunOrderSet(numRuns);
+        final int[] thisOrder = new int[numRuns], nextOrder = new int[numRuns], bestOrder = new int[numRuns];
+        final int[] groupStart = new int[numRuns + 1];
+        final long[] groupRuns = new long[numRuns];
+        for (int run = 0;  run < numRuns;  ++run) {
+            thisOrder[run] = run;
+        }
+        knownSet.add(thisOrder);
+        boolean isReduced = false;
 search_loop:
-        while (false == todoList.isEmpty()) {
-            thisSolution = todoList.removeFirst();
-            // iterate the lists of moves, try to swap adjacent lists
+        for (int todo = 0;  todo < knownSet.size();  ) {
+            knownSet.get(todo++, thisOrder);
+            // determine the groups of adjacent same-colored runs
+            int numGroups = 0;
+            for (int r = 0;  r < numRuns;  ++r) {
+                if ((0 == r) || (runColor[thisOrder[r]] != runColor[thisOrder[r - 1]])) {
+                    groupStart[numGroups] = r;
+                    groupRuns[numGroups++] = 0;
+                }
+                groupRuns[numGroups - 1] |= 1L << thisOrder[r];
+            }
+            groupStart[numGroups] = numRuns;
+            // iterate the groups, try to swap adjacent groups
 try_swap_loop:
-            for (int i = 0;  i < thisSolution.size() - 2;  ++i) {
-                List<Move> thisMoves = thisSolution.get(i);
-                List<Move> nextMoves = thisSolution.get(i + 1);
-                // check if the lists of moves can be swapped
-                for (final Move move1 : thisMoves) {
-                    for (final Move move2 : nextMoves) {
-                        if (move1.pathMap.containsKey(Integer.valueOf(move2.newPosition)) ||
-                            move2.pathMap.containsKey(Integer.valueOf(move1.oldPosition))) {
-                            System.out.println("minimizeColorChanges: blocked path  " + move1.toString() + "  " + move2.toString());
-                            continue try_swap_loop; // no swap - blocked path
-                        }
-                        if ((move1.newPosition == move2.oldPosition - board.directionIncrement[move1.direction]) ||
-                            (move2.newPosition == move1.newPosition - board.directionIncrement[move2.direction])) {
-                            System.out.println("minimizeColorChanges: blocker position  " + move1.toString() + "  " + move2.toString());
-                            continue try_swap_loop; // no swap - blocker position
-                        }
+            for (int g = 0;  g < numGroups - 2;  ++g) {
+                // check if the groups can be swapped
+                for (int r = groupStart[g];  r < groupStart[g + 1];  ++r) {
+                    if (0 != (groupRuns[g + 1] & ~runCommute[thisOrder[r]])) {
+                        continue try_swap_loop; // no swap - blocked path or blocker position
                     }
                 }
                 // swap
-                final List<List<Move>> nextSolution = new ArrayList<List<Move>>(thisSolution);
-                nextSolution.set(i, nextMoves);
-                nextSolution.set(i + 1, thisMoves);
-                // merge same-colored adjacent lists of moves
-                thisMoves = nextSolution.get(0);
-                for (int j = 1;  j < nextSolution.size();  ++j) {
-                    nextMoves = nextSolution.get(j);
-                    if (thisMoves.get(0).robotNumber == nextMoves.get(0).robotNumber) {
-                        thisMoves = new LinkedList<Move>(thisMoves);
-                        thisMoves.addAll(nextMoves);
-                        nextSolution.set(j - 1, thisMoves);
-                        nextSolution.remove(j--);
-                        System.out.println("minimizeColorChanges: merged " + Board.ROBOT_COLOR_NAMES_LONG[thisMoves.get(0).robotNumber]);
-                    } else {
-                        thisMoves = nextMoves;
-                    }
+                final int lenNext = groupStart[g + 2] - groupStart[g + 1];
+                System.arraycopy(thisOrder, 0, nextOrder, 0, numRuns);
+                System.arraycopy(thisOrder, groupStart[g + 1], nextOrder, groupStart[g], lenNext);
+                System.arraycopy(thisOrder, groupStart[g], nextOrder, groupStart[g] + lenNext, groupStart[g + 1] - groupStart[g]);
+                // merge same-colored adjacent groups
+                final int colorThis = runColor[thisOrder[groupStart[g]]];
+                final int colorNext = runColor[thisOrder[groupStart[g + 1]]];
+                int nextNumGroups = numGroups;
+                if ((g > 0) && (runColor[thisOrder[groupStart[g - 1]]] == colorNext)) {
+                    --nextNumGroups;
+                }
+                if (runColor[thisOrder[groupStart[g + 2]]] == colorThis) {
+                    --nextNumGroups;
                 }
                 // if this is a new minimum of color changes then update the solution
-                if (this.numColorChanges > nextSolution.size()) {
-                    System.out.println("minimizeColorChanges: reduced from " + this.numColorChanges + " to " + nextSolution.size());
-                    this.numColorChanges = nextSolution.size();
-                    this.movesList.clear();
-                    int stepNumber = 0;
-                    for (final List<Move> moves : nextSolution) {
-                        for (final Move move : moves) {
-                            move.stepNumber = stepNumber++; // re-number moves
-                            this.movesList.add(move);
-                        }
-                    }
+                if (this.numColorChanges > nextNumGroups) {
+                    this.numColorChanges = nextNumGroups;
+                    System.arraycopy(nextOrder, 0, bestOrder, 0, numRuns);
+                    isReduced = true;
                     knownSet.clear();
-                    todoList.clear();
+                    todo = 0;
                     if (this.numColors == this.numColorChanges) { // global minimum reached
-                        System.out.println("minimizeColorChanges: global minimum reached " + this.numColorChanges);
                         break search_loop; // end of search
                     }
                 }
-                if (true == knownSet.add(nextSolution)) {
-                    todoList.addLast(nextSolution);
+                knownSet.add(nextOrder);
+            }
+        }
+        if (true == isReduced) {
+            // re-order the moves according to the best order of runs
+            final int[] oldMoveCodes = Arrays.copyOf(this.moveCodes, this.numMoves);
+            int stepNumber = 0;
+            for (final int run : bestOrder) {
+                for (int i = runStart[run];  i < runStart[run + 1];  ++i) {
+                    this.moveCodes[stepNumber++] = oldMoveCodes[i];
+                }
+            }
+            this.moves = null; // re-number moves
+        }
+        if (true == instr.isEnabled(Instrumentation.Level.SUMMARY)) {
+            final long millis = (System.nanoTime() - startNano) / 1000000L;
+            instr.message(Instrumentation.Level.SUMMARY, "minimizeColorChanges: finished after " + millis + " ms.");
+        }
+    }
+
+
+    /**
+     * A set of permutations of runs, stored in insertion order.
+     * Each permutation is packed into long values, using 6 bits per run index.
+     */
+    private static final class RunOrderSet {
+        private static final int BITS = 6, PER_WORD = Long.SIZE / BITS, MASK = (1 << BITS) - 1;
+        private final int numRuns, numWords;
+        private long[] orders;  // all permutations in insertion order, numWords longs each
+        private int[] table;    // open addressing hash table: index + 1 of the permutation, 0 = unused
+        private int size;
+
+        RunOrderSet(final int numRuns) {
+            this.numRuns = numRuns;
+            this.numWords = (numRuns + PER_WORD - 1) / PER_WORD;
+            this.orders = new long[this.numWords * 64];
+            this.table = new int[128];
+            this.size = 0;
+        }
+
+        int size() {
+            return this.size;
+        }
+
+        void clear() {
+            Arrays.fill(this.table, 0);
+            this.size = 0;
+        }
+
+        void get(final int index, final int[] order) {
+            int offset = index * this.numWords;
+            long word = 0;
+            for (int i = 0;  i < this.numRuns;  ++i) {
+                if (0 == i % PER_WORD) {
+                    word = this.orders[offset++];
+                }
+                order[i] = (int)word & MASK;
+                word >>>= BITS;
+            }
+        }
+
+        boolean add(final int[] order) {
+            // pack the permutation behind the last stored one
+            if ((this.size + 1) * this.numWords > this.orders.length) {
+                this.orders = Arrays.copyOf(this.orders, this.orders.length << 1);
+            }
+            final int offset = this.size * this.numWords;
+            Arrays.fill(this.orders, offset, offset + this.numWords, 0L);
+            for (int i = 0;  i < this.numRuns;  ++i) {
+                this.orders[offset + i / PER_WORD] |= (long)order[i] << ((i % PER_WORD) * BITS);
+            }
+            // look it up in the hash table
+            int slot = this.hash(offset) & (this.table.length - 1);
+            for (int index;  0 != (index = this.table[slot]);  slot = (slot + 1) & (this.table.length - 1)) {
+                if (this.isEqual((index - 1) * this.numWords, offset)) {
+                    return false; // already known
+                }
+            }
+            this.table[slot] = ++this.size;
+            if ((this.size << 1) > this.table.length) {
+                this.rehash(this.table.length << 1);
+            }
+            return true;
+        }
+
+        private int hash(final int offset) {
+            long h = 0;
+            for (int i = 0;  i < this.numWords;  ++i) {
+                h = (h + this.orders[offset + i]) * 0x9E3779B97F4A7C15L;
+            }
+            return (int)(h ^ (h >>> 32));
+        }
+
+        private boolean isEqual(final int offset1, final int offset2) {
+            for (int i = 0;  i < this.numWords;  ++i) {
+                if (this.orders[offset1 + i] != this.orders[offset2 + i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private void rehash(final int tableLength) {
+            this.table = new int[tableLength];
+            for (int index = 1;  index <= this.size;  ++index) {
+                int slot = this.hash((index - 1) * this.numWords) & (tableLength - 1);
+                while (0 != this.table[slot]) {
+                    slot = (slot + 1) & (tableLength - 1);
                 }
+                this.table[slot] = index;
             }
         }
-        final long millis = (System.nanoTime() - startNano) / 1000000L;
-        System.out.println("minimizeColorChanges: finished after " + millis + " ms.");
     }
 }
 
@@ -0,0 +1,251 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+
+
+/**
+ * Receives the solutions from a solver while they are found (see
+ * <code>Solver.setOptionSolutionCollector</code>) and keeps only the best ones.
+ * <p>
+ * Solutions that consist of the same moves in a different order are equivalent,
+ * only the better one of them is kept. At most <tt>maxSolutions</tt> solutions are kept,
+ * the worst one is dropped when a better one arrives, so that a huge number of solutions
+ * never has to be stored at the same time.
+ * <p>
+ * Subclasses can override {@link #solutionKept(Solution)} to process each solution
+ * as soon as it has been found.
+ */
+public class SolutionCollector implements Iterable<Solution> {
+
+    private final Comparator<? super Solution> comparator;  //null: keep the first solutions found
+    private final int maxSolutions;
+    private final PriorityQueue<Solution> worstFirst;
+    private final List<Solution> inOrder;
+    private final HashMap<MovesKey, Solution> kept;
+    private int numFound, numDuplicates, numDropped;
+
+
+
+    /**
+     * Constructs an empty collector.
+     *
+     * @param comparator the order of the solutions, the smallest is the best.
+     * if <code>null</code> then the solutions are kept in the order they have been found.
+     * @param maxSolutions the maximum number of solutions to be kept
+     */
+    public SolutionCollector(final Comparator<? super Solution> comparator, final int maxSolutions) {
+        if (maxSolutions < 1) {
+            throw new IllegalArgumentException("maxSolutions=" + maxSolutions);
+        }
+        this.comparator = comparator;
+        this.maxSolutions = maxSolutions;
+        this.worstFirst = ((null == comparator) ? null :
+                new PriorityQueue<Solution>(Math.min(maxSolutions, 1024), Collections.reverseOrder(comparator)));
+        this.inOrder = ((null == comparator) ? new ArrayList<Solution>() : null);
+        this.kept = new HashMap<MovesKey, Solution>();
+    }
+
+
+    /**
+     * Creates a collector that keeps the best solutions in the order of the solution mode.
+     *
+     * @param mode MINIMUM or MAXIMUM: natural or reverse order of the solutions.
+     * ANY: the first solutions found.
+     * @param maxSolutions the maximum number of solutions to be kept
+     * @return the new collector
+     */
+    public static SolutionCollector createInstance(final Solver.SOLUTION_MODE mode, final int maxSolutions) {
+        final Comparator<Solution> comparator;
+        if (Solver.SOLUTION_MODE.MINIMUM == mode) {
+            comparator = new Comparator<Solution>() {
+                @Override
+                public int compare(final Solution s1, final Solution s2) {
+                    return s1.compareTo(s2);
+                }
+            };
+        } else if (Solver.SOLUTION_MODE.MAXIMUM == mode) {
+            comparator = Collections.reverseOrder();
+        } else {
+            comparator = null;
+        }
+        return new SolutionCollector(comparator, maxSolutions);
+    }
+
+
+
+    /**
+     * Offers a new solution to this collector.
+     *
+     * @param solution the solution that has been found
+     * @return <code>true</code> if the solution is kept
+     */
+    public final boolean add(final Solution solution) {
+        ++this.numFound;
+        final MovesKey key = new MovesKey(solution);
+        final Solution equivalent = this.kept.get(key);
+        if (null != equivalent) {
+            ++this.numDuplicates;
+            if ((null == this.comparator) || (this.comparator.compare(solution, equivalent) >= 0)) {
+                return false;
+            }
+            this.worstFirst.remove(equivalent);     //the new one is better: replace it
+        } else if (this.kept.size() >= this.maxSolutions) {
+            if ((null == this.comparator) || (this.comparator.compare(solution, this.worstFirst.peek()) >= 0)) {
+                ++this.numDropped;
+                return false;
+            }
+            this.kept.remove(new MovesKey(this.worstFirst.poll()));
+            ++this.numDropped;
+        }
+        this.kept.put(key, solution);
+        if (null == this.comparator) {
+            this.inOrder.add(solution);
+        } else {
+            this.worstFirst.add(solution);
+        }
+        this.solutionKept(solution);
+        return true;
+    }
+
+
+    /**
+     * @return <code>true</code> if no solution found later could be kept: this collector keeps
+     * the first solutions found (no comparator) and already has <tt>maxSolutions</tt> of them.
+     * The IDDFS solver then finishes its search immediately.
+     */
+    public final boolean isComplete() {
+        return ((null == this.comparator) && (this.kept.size() >= this.maxSolutions));
+    }
+
+
+    /**
+     * Called by {@link #add(Solution)} for each solution that is kept, immediately after
+     * it has been found. A solution may be dropped again later, when better ones arrive.
+     *
+     * @param solution the solution (don't modify it)
+     */
+    protected void solutionKept(final Solution solution) {
+        //nothing
+    }
+
+
+    /**
+     * Removes all solutions and resets the counters.
+     */
+    public final void clear() {
+        if (null == this.comparator) {
+            this.inOrder.clear();
+        } else {
+            this.worstFirst.clear();
+        }
+        this.kept.clear();
+        this.numFound = 0;
+        this.numDuplicates = 0;
+        this.numDropped = 0;
+    }
+
+
+    /**
+     * @return the solutions kept, the best one first
+     */
+    public final List<Solution> getSolutions() {
+        if (null == this.comparator) {
+            return new ArrayList<Solution>(this.inOrder);
+        }
+        final List<Solution> result = new ArrayList<Solution>(this.worstFirst);
+        Collections.sort(result, this.comparator);
+        return result;
+    }
+
+
+    /* (non-Javadoc)
+     * @see java.lang.Iterable#iterator()
+     */
+    @Override
+    public final Iterator<Solution> iterator() {
+        return this.getSolutions().iterator();
+    }
+
+
+    /**
+     * @return number of solutions kept
+     */
+    public final int size() {
+        return this.kept.size();
+    }
+
+
+    /**
+     * @return number of solutions offered by the solver
+     */
+    public final int getNumFound() {
+        return this.numFound;
+    }
+
+
+    /**
+     * @return number of solutions that were equivalent to a solution kept at that time
+     */
+    public final int getNumDuplicates() {
+        return this.numDuplicates;
+    }
+
+
+    /**
+     * @return number of solutions dropped because <tt>maxSolutions</tt> better ones were kept
+     */
+    public final int getNumDropped() {
+        return this.numDropped;
+    }
+
+
+
+    /**
+     * The moves of a solution, sorted, so that the equivalent move orderings are equal.
+     */
+    private static final class MovesKey {
+        private final int[] moveCodes;
+        private final int hash;
+
+        MovesKey(final Solution solution) {
+            this.moveCodes = solution.getMoveCodes();
+            Arrays.sort(this.moveCodes);
+            this.hash = Arrays.hashCode(this.moveCodes);
+        }
+
+        @Override
+        public int hashCode() {
+            return this.hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            return (obj instanceof MovesKey) && Arrays.equals(this.moveCodes, ((MovesKey)obj).moveCodes);
+        }
+    }
+}
@@ -38,16 +38,26 @@ public abstract class Solver {
     protected final boolean[][] boardWalls;
     protected final int boardSizeBitMask;
     protected final boolean isBoardStateInt32;
+    protected final boolean isBoardStateLong64;
     protected final boolean isBoardGoalWildcard;
+    protected int[][] wallStop;     //final position of a robot moving from [dir][pos] if there are no other robots
+    protected int[] column;         //x coordinate of each position
+    private boolean[] stopsRobots;  //computeStops: robot positions, if there are too many robots for the pairwise version
+    private static final int STOPS_PAIRWISE_MAX = 5;
     
     protected SOLUTION_MODE optSolutionMode = SOLUTION_MODE.MINIMUM;
     protected boolean optAllowRebounds = true;
     
     protected List<Solution> lastResultSolutions = null;
+    protected SolutionCollector optSolutionCollector = null;  //null: keep all solutions in lastResultSolutions
     protected long solutionMilliSeconds = 0;
     protected int solutionStoredStates = 0;
     protected int solutionMemoryMegabytes = 0;
     
+    protected Instrumentation instrumentation = Instrumentation.getDefault();
+    protected int nodeSampleCountdown = Integer.MAX_VALUE;
+    protected final SolverStatistics statistics = new SolverStatistics();
+    
     
     
     public static Solver createInstance(final Board board) {
@@ -67,9 +77,127 @@ public abstract class Solver {
         for (int i = 0;  i < this.board.sizeNumBits;  ++i) { bitMask += bitMask + 1; }
         this.boardSizeBitMask = bitMask;
         this.isBoardStateInt32 = (this.board.sizeNumBits * this.board.getNumRobots() <= 32);
+        this.isBoardStateLong64 = (this.board.sizeNumBits * this.board.getNumRobots() <= 64);
         this.isBoardGoalWildcard = ((null != this.board.getGoal()) && (this.board.getGoal().robotNumber < 0));
     }
 
+    protected final void initWallStop() {
+        if (null != this.wallStop) {
+            return;
+        }
+        final int size = this.board.size;
+        this.wallStop = new int[4][size];
+        this.column = new int[size];
+        for (int pos = 0;  pos < size;  ++pos) {
+            this.column[pos] = pos % this.board.width;
+        }
+        for (int dir = 0;  dir < 4;  ++dir) {
+            final boolean[] walls = this.boardWalls[dir];
+            final int dirIncr = this.board.directionIncrement[dir];
+            final int[] stop = this.wallStop[dir];
+            if (dirIncr > 0) {  //the neighbour in direction dir has already been processed
+                for (int pos = size - 1;  pos >= 0;  --pos) {
+                    stop[pos] = ((true == walls[pos]) ? pos : stop[pos + dirIncr]);
+                }
+            } else {
+                for (int pos = 0;  pos < size;  ++pos) {
+                    stop[pos] = ((true == walls[pos]) ? pos : stop[pos + dirIncr]);
+                }
+            }
+        }
+    }
+    
+    protected final void computeStops(final int[] state, final int[] stops) {
+        //final positions of all robots in all directions: stops[(robo << 2) + dir].
+        //start with the wall stops, then let each pair of robots in the same row or column
+        //shorten the moves towards each other. (requires initWallStop)
+        if (state.length > STOPS_PAIRWISE_MAX) {
+            this.computeStopsScalar(state, stops);   //the number of pairs grows too fast
+            return;
+        }
+        final int width = this.board.width;
+        final int[] column = this.column;
+        final int[] stopN = this.wallStop[Board.NORTH], stopE = this.wallStop[Board.EAST];
+        final int[] stopS = this.wallStop[Board.SOUTH], stopW = this.wallStop[Board.WEST];
+        for (int a = 0;  a < state.length;  ++a) {
+            final int pa = state[a];
+            stops[(a << 2) + Board.NORTH] = stopN[pa];
+            stops[(a << 2) + Board.EAST]  = stopE[pa];
+            stops[(a << 2) + Board.SOUTH] = stopS[pa];
+            stops[(a << 2) + Board.WEST]  = stopW[pa];
+        }
+        for (int a = 0;  a < state.length;  ++a) {
+            final int pa = state[a];
+            final int ca = column[pa];
+            for (int b = a + 1;  b < state.length;  ++b) {
+                final int pb = state[b];
+                final int cb = column[pb];
+                final int lo, hi;   //lo is above or left of hi
+                if (pa < pb) { lo = a;  hi = b; } else { lo = b;  hi = a; }
+                final int plo = state[lo], phi = state[hi];
+                if (ca == cb) {
+                    if (phi <= stops[(lo << 2) + Board.SOUTH]) { stops[(lo << 2) + Board.SOUTH] = phi - width; }
+                    if (plo >= stops[(hi << 2) + Board.NORTH]) { stops[(hi << 2) + Board.NORTH] = plo + width; }
+                } else if (pa - ca == pb - cb) {
+                    if (phi <= stops[(lo << 2) + Board.EAST]) { stops[(lo << 2) + Board.EAST] = phi - 1; }
+                    if (plo >= stops[(hi << 2) + Board.WEST]) { stops[(hi << 2) + Board.WEST] = plo + 1; }
+                }
+            }
+        }
+    }
+    
+    protected final void computeStopsOfRobot(final int[] state, final int robo, final int[] stops) {
+        //final positions of one robot in all directions: stops[(robo << 2) + dir].
+        //the other entries of stops are not changed. (requires initWallStop)
+        final int width = this.board.width;
+        final int pa = state[robo];
+        final int ca = this.column[pa];
+        int stopN = this.wallStop[Board.NORTH][pa], stopE = this.wallStop[Board.EAST][pa];
+        int stopS = this.wallStop[Board.SOUTH][pa], stopW = this.wallStop[Board.WEST][pa];
+        for (int b = 0;  b < state.length;  ++b) {
+            final int pb = state[b];
+            final int cb = this.column[pb];
+            if (b == robo) {
+                continue;
+            } else if (ca == cb) {
+                if (pb > pa) { if (pb <= stopS) { stopS = pb - width; } }
+                else         { if (pb >= stopN) { stopN = pb + width; } }
+            } else if (pa - ca == pb - cb) {
+                if (pb > pa) { if (pb <= stopE) { stopE = pb - 1; } }
+                else         { if (pb >= stopW) { stopW = pb + 1; } }
+            }
+        }
+        stops[(robo << 2) + Board.NORTH] = stopN;
+        stops[(robo << 2) + Board.EAST]  = stopE;
+        stops[(robo << 2) + Board.SOUTH] = stopS;
+        stops[(robo << 2) + Board.WEST]  = stopW;
+    }
+    
+    private void computeStopsScalar(final int[] state, final int[] stops) {
+        if (null == this.stopsRobots) {
+            this.stopsRobots = new boolean[this.board.size];
+        }
+        final boolean[] robots = this.stopsRobots;
+        for (int pos : state) { robots[pos] = true; }
+        for (int robo = 0;  robo < state.length;  ++robo) {
+            final int oldRoboPos = state[robo];
+            for (int dir = 0;  dir < 4;  ++dir) {
+                final int dirIncr = this.board.directionIncrement[dir];
+                final boolean[] walls = this.boardWalls[dir];
+                int newRoboPos = oldRoboPos;
+                while (false == walls[newRoboPos]) {    //move the robot until it reaches a wall or another robot.
+                    newRoboPos += dirIncr;
+                    if (true == robots[newRoboPos]) {
+                        newRoboPos -= dirIncr;
+                        break;
+                    }
+                }
+                stops[(robo << 2) + dir] = newRoboPos;
+            }
+        }
+        for (int pos : state) { robots[pos] = false; }
+    }
+    
     protected final String stateString(final int[] state) {
         final Formatter formatter = new Formatter();
         this.swapGoalLast(state);
@@ -89,7 +217,52 @@ public abstract class Solver {
         }
     }
     
+    protected final int swapGoalLast(final int robot) {
+        //swap goal robot and last robot (if goal is not wildcard)
+        if (false == this.isBoardGoalWildcard) {
+            final int last = this.board.getNumRobots() - 1;
+            if (last == robot) {
+                return this.board.getGoal().robotNumber;
+            } else if (this.board.getGoal().robotNumber == robot) {
+                return last;
+            }
+        }
+        return robot;
+    }
+    
+    protected final void initNodeSampling() {
+        this.nodeSampleCountdown = (this.instrumentation.isEnabled(Instrumentation.Level.PER_NODE) ?
+                Math.max(1, this.instrumentation.getNodeSamplingInterval()) : Integer.MAX_VALUE);
+    }
+    
+    protected final void sampleNode(final int depth, final int[] state) {
+        //called when nodeSampleCountdown has reached zero
+        if (true == this.instrumentation.isEnabled(Instrumentation.Level.PER_NODE)) {
+            this.instrumentation.node(this, depth, state);
+        }
+        this.initNodeSampling();
+    }
+    
+    protected final void addSolution(final Solution solution) {
+        if (null == this.optSolutionCollector) {
+            this.lastResultSolutions.add(solution);
+        } else {
+            this.optSolutionCollector.add(solution);
+        }
+    }
+    
+    protected final boolean isSolutionFound() {
+        return ((null == this.optSolutionCollector) ? (false == this.lastResultSolutions.isEmpty()) : (this.optSolutionCollector.size() > 0));
+    }
+    
     protected final void sortSolutions() {
+        if (null != this.optSolutionCollector) {
+            this.lastResultSolutions = this.optSolutionCollector.getSolutions();  //already sorted by the collector
+            if (0 == this.lastResultSolutions.size()) {
+                this.lastResultSolutions.add(new Solution(this.board));
+            }
+            return;
+        }
         if (0 == this.lastResultSolutions.size()) {
             this.lastResultSolutions.add(new Solution(this.board));
         }
@@ -114,6 +287,22 @@ public abstract class Solver {
         return this.optSolutionMode;
     }
     
+    /**
+     * Lets the solver pass each solution to the collector as soon as it has been found,
+     * instead of storing all of them. The collector is cleared when a search starts.
+     * The result of <code>execute</code> then contains the solutions kept by the collector,
+     * in the order of the collector.
+     *
+     * @param collector the collector, or <code>null</code> to keep all solutions (default)
+     */
+    public final void setOptionSolutionCollector(final SolutionCollector collector) {
+        this.optSolutionCollector = collector;
+    }
+    
+    public final SolutionCollector getOptionSolutionCollector() {
+        return this.optSolutionCollector;
+    }
+    
     public final void setOptionAllowRebounds(boolean allowRebounds) {
         this.optAllowRebounds = allowRebounds;
     }
@@ -122,6 +311,14 @@ public abstract class Solver {
         return this.optAllowRebounds;
     }
     
+    public final void setInstrumentation(final Instrumentation instrumentation) {
+        this.instrumentation = (null == instrumentation ? Instrumentation.NONE : instrumentation);
+    }
+    
+    public final Instrumentation getInstrumentation() {
+        return this.instrumentation;
+    }
+    
     public final String getOptionsAsString() {
         return this.optSolutionMode.getName() + " number of robots moved; "
                 + (this.optAllowRebounds ? "with" : "no") + " rebound moves";
@@ -139,6 +336,10 @@ public abstract class Solver {
         return this.solutionMemoryMegabytes;
     }
     
+    public final SolverStatistics getStatistics() {
+        return this.statistics;
+    }
+    
     @Override
     public String toString() {
         StringBuilder s = new StringBuilder();
@@ -19,6 +19,7 @@ package driftingdroids.model;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.List;
 
 
@@ -26,6 +27,9 @@ import java.util.List;
 
 public class SolverBFS extends Solver {
     private final boolean[] expandRobotPositions;
+    private boolean optCompressStates = false;
+    private boolean optStoreParents = false;
+    private boolean optDelayedDuplicates = false;
 
     protected SolverBFS(final Board board) {
         super(board);
@@ -34,33 +38,105 @@ public class SolverBFS extends Solver {
     }
     
     
+    /**
+     * Stores the states of each BFS level sorted and delta-encoded, which needs
+     * about half the memory of the default byte arrays. The levels are then expanded
+     * in a different order, so that the path to a final state is searched in a different order, too.
+     * The number of moves and of robots moved of the best solution are the same as without this option,
+     * but another one of several equally good solutions may be returned.
+     * This option is ignored if rebound moves are not allowed.
+     *
+     * @param compressStates true to compress the stored states
+     */
+    public final void setOptionCompressStates(final boolean compressStates) {
+        this.optCompressStates = compressStates;
+    }
+    
+    public final boolean getOptionCompressStates() {
+        return this.optCompressStates;
+    }
+    
+    
+    /**
+     * Stores the index of the predecessor of each state, so that the path to a final state
+     * is found by following the predecessors back to the start state, instead of searching
+     * the previous levels of states. This needs 4 additional bytes per stored state.
+     * The path is then the one of the BFS expansion, which can be another one of several
+     * equally good solutions. The option "compress states" is ignored if this option is set.
+     *
+     * @param storeParents true to store the predecessor of each state
+     */
+    public final void setOptionStoreParents(final boolean storeParents) {
+        this.optStoreParents = storeParents;
+    }
+    
+    public final boolean getOptionStoreParents() {
+        return this.optStoreParents;
+    }
+    
+    
+    /**
+     * Detects duplicate states in batches instead of one by one: the new states of a level
+     * are buffered, radix-sorted by their keys, and then merged against the sorted keys
+     * of all known states in one sequential pass. This replaces the random accesses
+     * to the key trie by sequential memory accesses, at the cost of about 16 bytes per known state
+     * (the sorted keys and the buffer they are merged into).
+     * The same states are stored in the same order as without this option.
+     * This option is ignored if rebound moves are not allowed, or if the keys
+     * have more than 40 bits (5 robots on the 16x16 board).
+     *
+     * @param delayedDuplicates true to detect duplicate states in batches
+     */
+    public final void setOptionDelayedDuplicates(final boolean delayedDuplicates) {
+        this.optDelayedDuplicates = delayedDuplicates;
+    }
+    
+    public final boolean getOptionDelayedDuplicates() {
+        return this.optDelayedDuplicates;
+    }
+    
+    
     @Override
     public List<Solution> execute() throws InterruptedException {
         final long startExecute = System.nanoTime();
         this.lastResultSolutions = new ArrayList<Solution>();
+        if (null != this.optSolutionCollector) {
+            this.optSolutionCollector.clear();
+        }
         
-        System.out.println("***** " + this.getClass().getSimpleName() + " *****");
-        System.out.println("options: " + this.getOptionsAsString());
+        final Instrumentation instr = this.instrumentation;
+        final boolean isSummary = instr.isEnabled(Instrumentation.Level.SUMMARY);
+        if (true == isSummary) {
+            instr.message(Instrumentation.Level.SUMMARY, "***** " + this.getClass().getSimpleName() + " *****");
+            instr.message(Instrumentation.Level.SUMMARY, "options: " + this.getOptionsAsString());
+        }
+        this.initNodeSampling();
+        this.statistics.reset();
         
         final KnownStates knownStates = new KnownStates();
         final List<int[]> finalStates = new ArrayList<int[]>();
+        final List<Integer> finalIndexes = new ArrayList<Integer>();
         final int[] startState = this.board.getRobotPositions().clone();
         swapGoalLast(startState);   //goal robot is always the last one.
-        System.out.println("startState=" + this.stateString(startState));
+        if (true == isSummary) {
+            instr.message(Instrumentation.Level.SUMMARY, "startState=" + this.stateString(startState));
+        }
         
         //find the "finalStates" and save all intermediate states in "knownStates"
         final long startGetStates = System.nanoTime();
         if (true == this.optAllowRebounds) {
-            this.getFinalStates(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates);
+            this.getFinalStates(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates, finalIndexes);
         } else {
-            this.getFinalStatesNoRebound(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates);
+            this.getFinalStatesNoRebound(startState, this.board.getGoal().position, this.isBoardGoalWildcard, knownStates, finalStates, finalIndexes);
         }
         this.solutionStoredStates = knownStates.size();
-        System.out.println("knownStates: " + knownStates.infoString());
-        final long durationStates = (System.nanoTime() - startGetStates) / 1000000L;
-        System.out.println("time (Breadth-First-Search for finalStates) : " + (durationStates / 1000d) + " seconds");
-        System.out.println("number of finalStates: " + finalStates.size());
-        System.out.println(knownStates.megaBytesAllocated());
+        if (true == isSummary) {
+            instr.message(Instrumentation.Level.SUMMARY, "knownStates: " + knownStates.infoString());
+            final long durationStates = (System.nanoTime() - startGetStates) / 1000000L;
+            instr.message(Instrumentation.Level.SUMMARY, "time (Breadth-First-Search for finalStates) : " + (durationStates / 1000d) + " seconds");
+            instr.message(Instrumentation.Level.SUMMARY, "number of finalStates: " + finalStates.size());
+            instr.message(Instrumentation.Level.SUMMARY, knownStates.megaBytesAllocated());
+        }
         
         
         //find the paths from "startState" to the "finalStates".
@@ -69,8 +145,11 @@ public class SolverBFS extends Solver {
         //or reverse natural order (MAXIMUM), so that the preferred solution is always
         //placed at list index 0.
         final long startGetPath = System.nanoTime();
-        for (int[] finalState : finalStates) {
-            final List<int[]> statesPath = this.getStatesPath(finalState, knownStates);
+        for (int f = 0;  f < finalStates.size();  ++f) {
+            final int[] finalState = finalStates.get(f);
+            final List<int[]> statesPath = ((true == knownStates.hasParents()) ?
+                    this.getStatesPathParents(finalIndexes.get(f).intValue(), knownStates) :
+                    this.getStatesPath(finalState, knownStates));
             if (1 < statesPath.size()) {
                 Solution tmpSolution = new Solution(this.board);
                 swapGoalLast(statesPath.get(0));
@@ -78,20 +157,22 @@ public class SolverBFS extends Solver {
                     swapGoalLast(statesPath.get(i+1));
                     tmpSolution.add(new Move(this.board, statesPath.get(i), statesPath.get(i+1), i));
                 }
-                System.out.printf("finalState=%s  solution=%s", this.stateString(finalState), tmpSolution.toString());
-                if (true == tmpSolution.isRebound()) {
-                    System.out.print("  <- rebound");
+                if (true == isSummary) {
+                    instr.message(Instrumentation.Level.SUMMARY, "finalState=" + this.stateString(finalState) + "  solution=" + tmpSolution.toString()
+                            + (tmpSolution.isRebound() ? "  <- rebound" : ""));
                 }
-                this.lastResultSolutions.add(tmpSolution);
-                System.out.println();
+                this.addSolution(tmpSolution.finish(this.instrumentation));
             }
         }
         
         this.sortSolutions();
         
-        final long durationPath = (System.nanoTime() - startGetPath) / 1000000L;
-        System.out.println("time (Depth-First-Search   for statePaths ) : " + (durationPath / 1000d) + " seconds");
+        if (true == isSummary) {
+            final long durationPath = (System.nanoTime() - startGetPath) / 1000000L;
+            instr.message(Instrumentation.Level.SUMMARY, "time (Depth-First-Search   for statePaths ) : " + (durationPath / 1000d) + " seconds");
+        }
         
+        this.statistics.finish();
         this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
         return this.lastResultSolutions;
     }
@@ -103,55 +184,69 @@ public class SolverBFS extends Solver {
             final int goalPosition,             //IN: position of goal
             final boolean isWildcardGoal,       //IN: is it the wildcard goal (any robot)
             final KnownStates knownStates,      //OUT: all known states
-            final List<int[]> finalStates       //OUT: final states (goal robot has reached goal position)
+            final List<int[]> finalStates,      //OUT: final states (goal robot has reached goal position)
+            final List<Integer> finalIndexes    //OUT: indexes of the final states in knownStates
             ) throws InterruptedException {
         int depth = knownStates.incrementDepth();
         assert 0 == depth : depth;
-        knownStates.addKey(startState);
-        knownStates.addState(startState);
+        final boolean isDelayed = knownStates.isDelayed();
+        this.initWallStop();
+        final int[] stops = new int[startState.length << 2];
+        if (true == isDelayed) {
+            knownStates.bufferState(startState, false, -1);
+            knownStates.flushStates(finalStates, finalIndexes);
+        } else {
+            knownStates.addKey(startState);
+            knownStates.addState(startState, -1);
+        }
         final int[] tmpState = new int[startState.length];
         final int robo1 = tmpState.length - 1;  //goal robot is always the last one.
         //is the starting position already on goal?
         if (true == isWildcardGoal) {
-            for (int pos : startState) { if (goalPosition == pos) { finalStates.add(startState.clone()); } }
-        } else if (goalPosition == startState[robo1]) { finalStates.add(startState.clone()); }
+            for (int pos : startState) { if (goalPosition == pos) { finalStates.add(startState.clone());  finalIndexes.add(Integer.valueOf(0)); } }
+        } else if (goalPosition == startState[robo1]) { finalStates.add(startState.clone());  finalIndexes.add(Integer.valueOf(0)); }
         //breadth-first search
         int prevSize = 0;
         boolean foundGoal = false;
+        long nanoLevel = System.nanoTime();
         while(true) {
             if (0 < finalStates.size()) { return; } //goal has been reached!
             depth = knownStates.incrementDepth();
             KnownStates.Iterator iter = knownStates.iterator(depth - 1);
-            final double thisPrevSizes = (0 == iter.size() ? 0.0 : (double)prevSize / iter.size());
-            System.out.println("... BFS working at depth="+depth+"   statesToExpand=" + iter.size() + "   prev/thisStates=" + Math.round(thisPrevSizes*1000d)/1000d);
+            final long nanoNow = System.nanoTime();
+            SolverEvents.INSTANCE.bfsLevel(depth - 1, iter.size(), nanoNow - nanoLevel);
+            if (true == this.instrumentation.isEnabled(Instrumentation.Level.PER_DEPTH)) {
+                this.instrumentation.depth(this, depth - 1, iter.size(), nanoNow - nanoLevel);
+                final double thisPrevSizes = (0 == iter.size() ? 0.0 : (double)prevSize / iter.size());
+                this.instrumentation.message(Instrumentation.Level.PER_DEPTH, "... BFS working at depth="+depth+"   statesToExpand=" + iter.size() + "   prev/thisStates=" + Math.round(thisPrevSizes*1000d)/1000d);
+            }
+            nanoLevel = nanoNow;
             if (0 == iter.size()) { return; }       //goal NOT reachable!
+            this.statistics.addNodesExpanded(depth - 1, iter.size());
             prevSize += iter.size();
             //first pass: move goal robot, only.
             while (true == iter.next(tmpState)) {
+                if (0 == --this.nodeSampleCountdown) {
+                    this.sampleNode(depth - 1, tmpState);
+                }
                 if (Thread.interrupted()) { throw new InterruptedException(); }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
+                this.computeStopsOfRobot(tmpState, robo1, stops);   //move the goal robot in all directions at once.
                 final int oldRoboPos = tmpState[robo1];
-                int dir = -1;
-                for (int dirIncr : this.board.directionIncrement) {
-                    ++dir;
-                    int newRoboPos = oldRoboPos;
-                    final boolean[] walls = this.boardWalls[dir];
-                    while (false == walls[newRoboPos]) {                //move the robot until it reaches a wall or another robot.
-                        newRoboPos += dirIncr;                          //NOTE: we rely on the fact that all boards are surrounded
-                        if (this.expandRobotPositions[newRoboPos]) {    //by outer walls. without the outer walls we would need
-                            newRoboPos -= dirIncr;                      //some additional boundary checking here.
-                            break;
-                        }
-                    }
+                for (int dir = 0;  dir < 4;  ++dir) {
+                    final int newRoboPos = stops[(robo1 << 2) + dir];
                     if (oldRoboPos != newRoboPos) {
                         tmpState[robo1] = newRoboPos;
                         //if we have already found a finalState then this is the last BFS pass.
                         //and we only need to store the additional finalStates but not all the "misses".
                         if ((false == foundGoal) || (goalPosition == newRoboPos)) {
-                            if (true == knownStates.addKey(tmpState)) {
-                                knownStates.addState(tmpState);
+                            if (true == isDelayed) {
+                                knownStates.bufferState(tmpState, (goalPosition == newRoboPos), iter.index());
+                                foundGoal |= (goalPosition == newRoboPos);
+                            } else if (true == knownStates.addKey(tmpState)) {
+                                knownStates.addState(tmpState, iter.index());
                                 if (goalPosition == newRoboPos) {
                                     finalStates.add(tmpState.clone());  //goal robot has reached the goal position.
+                                    finalIndexes.add(Integer.valueOf(knownStates.size() - 1));
                                     foundGoal = true;
                                 }
                             }
@@ -159,38 +254,34 @@ public class SolverBFS extends Solver {
                     }
                 }
                 tmpState[robo1] = oldRoboPos;
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = false; }
+            }
+            if (true == isDelayed) {
+                knownStates.flushStates(finalStates, finalIndexes);
             }
             if ((0 < finalStates.size()) && (false == isWildcardGoal)) { return; }  //goal has been reached!
             //second pass: move the other (non-goal) robots.
             iter = knownStates.iterator(depth - 1);
             while (true == iter.next(tmpState)) {
                 if (Thread.interrupted()) { throw new InterruptedException(); }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
+                this.computeStops(tmpState, stops);     //move all robots in all directions at once.
                 for (int robo2 = 0;  robo2 < robo1;  ++robo2) {
                     final int oldRoboPos = tmpState[robo2];
-                    int dir = -1;
-                    for (int dirIncr : this.board.directionIncrement) {
-                        ++dir;
-                        int newRoboPos = oldRoboPos;
-                        final boolean[] walls = this.boardWalls[dir];
-                        while (false == walls[newRoboPos]) {                //move the robot until it reaches a wall or another robot.
-                            newRoboPos += dirIncr;                          //NOTE: we rely on the fact that all boards are surrounded
-                            if (this.expandRobotPositions[newRoboPos]) {    //by outer walls. without the outer walls we would need
-                                newRoboPos -= dirIncr;                      //some additional boundary checking here.
-                                break;
-                            }
-                        }
+                    for (int dir = 0;  dir < 4;  ++dir) {
+                        final int newRoboPos = stops[(robo2 << 2) + dir];
                         if (oldRoboPos != newRoboPos) {
                             tmpState[robo2] = newRoboPos;
                             //if we have already found a finalState then this is the last BFS pass.
                             //and we only need to store the additional finalStates but not all the "misses".
                             if ((false == foundGoal) || ((true == isWildcardGoal) && (goalPosition == newRoboPos))) {
-                                if (true == knownStates.addKey(tmpState)) {
-                                    knownStates.addState(tmpState);
+                                if (true == isDelayed) {
+                                    knownStates.bufferState(tmpState, ((true == isWildcardGoal) && (goalPosition == newRoboPos)), iter.index());
+                                    foundGoal |= ((true == isWildcardGoal) && (goalPosition == newRoboPos));
+                                } else if (true == knownStates.addKey(tmpState)) {
+                                    knownStates.addState(tmpState, iter.index());
                                     //in this second pass, we can reach a wildcard goal, only.
                                     if ((true == isWildcardGoal) && (goalPosition == newRoboPos)) {
                                         finalStates.add(tmpState.clone());  //goal robot has reached the goal position.
+                                        finalIndexes.add(Integer.valueOf(knownStates.size() - 1));
                                         foundGoal = true;
                                     }
                                 }
@@ -199,7 +290,9 @@ public class SolverBFS extends Solver {
                     }
                     tmpState[robo2] = oldRoboPos;
                 }
-                for (int pos : tmpState) { this.expandRobotPositions[pos] = false; }
+            }
+            if (true == isDelayed) {
+                knownStates.flushStates(finalStates, finalIndexes);
             }
         }
     }
@@ -211,30 +304,42 @@ public class SolverBFS extends Solver {
             final int goalPosition,             //IN: position of goal
             final boolean isWildcardGoal,       //IN: is it the wildcard goal (any robot)
             final KnownStates knownStates,      //OUT: all known states
-            final List<int[]> finalStates       //OUT: final states (goal robot has reached goal position)
+            final List<int[]> finalStates,      //OUT: final states (goal robot has reached goal position)
+            final List<Integer> finalIndexes    //OUT: indexes of the final states in knownStates
             ) throws InterruptedException {
         int depth = knownStates.incrementDepth();
         assert 0 == depth : depth;
         final int[] tmpDirs = new int[startState.length];
         for (int i = 0;  i < tmpDirs.length;  ++i) { tmpDirs[i] = 7; }  // 7 == not_yet_moved
         knownStates.addKey(startState);
-        knownStates.addState(startState);
+        knownStates.addState(startState, -1);
         knownStates.addDirection(tmpDirs);
         final int[] tmpState = new int[startState.length];
         final int robo1 = tmpState.length - 1;  //goal robot is always the last one.
         //is the starting position already on goal?
         if (true == isWildcardGoal) {
-            for (int pos : startState) { if (goalPosition == pos) { finalStates.add(startState.clone()); } }
-        } else if (goalPosition == startState[robo1]) { finalStates.add(startState.clone()); }
+            for (int pos : startState) { if (goalPosition == pos) { finalStates.add(startState.clone());  finalIndexes.add(Integer.valueOf(0)); } }
+        } else if (goalPosition == startState[robo1]) { finalStates.add(startState.clone());  finalIndexes.add(Integer.valueOf(0)); }
         //breadth-first search
         boolean foundGoal = false;
+        long nanoLevel = System.nanoTime();
         while(true) {
             if (0 < finalStates.size()) { return; } //goal has been reached!
             depth = knownStates.incrementDepth();
             final KnownStates.Iterator iter = knownStates.iterator(depth - 1);
-            System.out.println("... BFS working at depth="+depth+"   statesToExpand=" + iter.size());
+            final long nanoNow = System.nanoTime();
+            SolverEvents.INSTANCE.bfsLevel(depth - 1, iter.size(), nanoNow - nanoLevel);
+            if (true == this.instrumentation.isEnabled(Instrumentation.Level.PER_DEPTH)) {
+                this.instrumentation.depth(this, depth - 1, iter.size(), nanoNow - nanoLevel);
+                this.instrumentation.message(Instrumentation.Level.PER_DEPTH, "... BFS working at depth="+depth+"   statesToExpand=" + iter.size());
+            }
+            nanoLevel = nanoNow;
             if (0 == iter.size()) { return; }       //goal NOT reachable!
+            this.statistics.addNodesExpanded(depth - 1, iter.size());
             while (true == iter.next(tmpState, tmpDirs)) {
+                if (0 == --this.nodeSampleCountdown) {
+                    this.sampleNode(depth - 1, tmpState);
+                }
                 if (Thread.interrupted()) { throw new InterruptedException(); }
                 for (int pos : tmpState) { this.expandRobotPositions[pos] = true; }
                 for (int robo = 0;  robo < tmpState.length;  ++robo) {
@@ -260,10 +365,11 @@ public class SolverBFS extends Solver {
                                 //and we only need to store the additional finalStates but not all the "misses".
                                 if ((false == foundGoal) || ((goalPosition == newRoboPos) && ((robo1 == robo) || (true == isWildcardGoal)))) {
                                     if (true == knownStates.addKey(tmpState)) {
-                                        knownStates.addState(tmpState);
+                                        knownStates.addState(tmpState, iter.index());
                                         knownStates.addDirection(tmpDirs);
                                         if ((goalPosition == newRoboPos) && ((robo1 == robo) || (true == isWildcardGoal))) {
                                             finalStates.add(tmpState.clone());  //goal robot has reached the goal position.
+                                            finalIndexes.add(Integer.valueOf(knownStates.size() - 1));
                                             foundGoal = true;
                                         }
                                     }
@@ -288,7 +394,19 @@ public class SolverBFS extends Solver {
             final int[][] tmpStates = new int[depth][this.board.getNumRobots()];
             final boolean haveResult;
             if (true == this.optAllowRebounds) {
-                haveResult = this.doPathDFS(finalState.clone(), knownStates, depth-1, result, tmpStates);
+                //the last move is the one of the robot that has reached the goal.
+                int goalRobot = finalState.length - 1;
+                if (true == this.isBoardGoalWildcard) {
+                    while ((goalRobot > 0) && (this.board.getGoal().position != finalState[goalRobot])) { --goalRobot; }
+                }
+                //MINIMUM: allow one more robot in each search, until a path has been found.
+                //the last search has no limit and doesn't fail.
+                final int numRobots = this.board.getNumRobots();
+                int maxRobots = ((SOLUTION_MODE.MINIMUM == this.optSolutionMode) ? 1 : numRobots);
+                while ((false == this.doPathDFS(finalState.clone(), 1 << goalRobot, maxRobots, knownStates, depth-1, result, tmpStates)) && (maxRobots < numRobots)) {
+                    ++maxRobots;
+                }
+                haveResult = (false == result.isEmpty());
             } else {
                 final int[] tmpDirs = new int[this.board.getNumRobots()];
                 haveResult = this.doPathDFSNoRebound(finalState.clone(), knownStates, depth-1, result, tmpStates, tmpDirs);
@@ -302,7 +420,23 @@ public class SolverBFS extends Solver {
     
     
     
-    private boolean doPathDFS(final int[] thisState, final KnownStates knownStates, final int depth, final List<int[]> result, final int[][] tmpStates) throws InterruptedException {
+    private List<int[]> getStatesPathParents(final int finalIndex, final KnownStates knownStates) {
+        final List<int[]> result = new ArrayList<int[]>();
+        //follow the predecessors back to the start state, which has no predecessor.
+        for (int index = finalIndex;  index >= 0;  index = knownStates.getParent(index)) {
+            final int[] state = new int[this.board.getNumRobots()];
+            knownStates.getState(index, state);
+            result.add(state);
+        }
+        Collections.reverse(result);
+        return result;
+    }
+    
+    
+    
+    private boolean doPathDFS(final int[] thisState, final int robotsMoved, final int maxRobots, final KnownStates knownStates, final int depth, final List<int[]> result, final int[][] tmpStates) throws InterruptedException {
+        //robotsMoved: bit mask of the robots moved from thisState to the final state.
+        //maxRobots: the path may not move more robots than this.
         final KnownStates.Iterator iter = knownStates.iterator(depth);
         final int[] tmpStatesAtDepth = tmpStates[depth];
         if (0 == depth) {
@@ -310,17 +444,23 @@ public class SolverBFS extends Solver {
             result.add(tmpStatesAtDepth.clone());
             return true;
         } else {
+            //the order of the states in a level depends on the storage, so we rank the
+            //predecessors by the solution mode: first the moves of robots that are preferred,
+            //then the moves of the other robots, which are deferred until the level has been read.
+            List<int[]> deferredStates = null;
+            List<Integer> deferredRobots = null;
             while (true == iter.next(tmpStatesAtDepth)) {
                 if (Thread.interrupted()) { throw new InterruptedException(); }
                 //detect the number of moved robots between prevState and thisState.
                 //store the position difference in diffPos if only one robot has moved.
-                int diffPos = 0, prevPos = 0, i = -1;
+                int diffPos = 0, prevPos = 0, diffRobo = 0, i = -1;
                 for (int thisPos : thisState) {
                     ++i;
                     if (tmpStatesAtDepth[i] != thisPos) {
                         if (0 == diffPos) {
                             prevPos = tmpStatesAtDepth[i];
                             diffPos = thisPos - prevPos;
+                            diffRobo = i;
                         } else {
                             diffPos = 0; break; //found more than one difference
                         }
@@ -343,20 +483,47 @@ public class SolverBFS extends Solver {
                     }
                     for (int pos : tmpStatesAtDepth) { this.expandRobotPositions[pos] = false; }
                     //follow the move to the previous level in the array of states. (recursion)
-                    if (prevPos == thisPos) {
-                        if (this.doPathDFS(tmpStatesAtDepth, knownStates, depth-1, result, tmpStates)) {
-                            result.add(tmpStatesAtDepth.clone());
-                            return true;
+                    if ((prevPos == thisPos) && (Integer.bitCount(robotsMoved | (1 << diffRobo)) <= maxRobots)) {
+                        if (true == this.isPreferredPathMove(robotsMoved, diffRobo)) {
+                            if (this.doPathDFS(tmpStatesAtDepth, robotsMoved | (1 << diffRobo), maxRobots, knownStates, depth-1, result, tmpStates)) {
+                                result.add(tmpStatesAtDepth.clone());
+                                return true;
+                            }
+                        } else {
+                            if (null == deferredStates) {
+                                deferredStates = new ArrayList<int[]>();
+                                deferredRobots = new ArrayList<Integer>();
+                            }
+                            deferredStates.add(tmpStatesAtDepth.clone());
+                            deferredRobots.add(Integer.valueOf(diffRobo));
                         }
                     }
                 }
             }
+            if (null != deferredStates) {
+                for (int d = 0;  d < deferredStates.size();  ++d) {
+                    final int[] prevState = deferredStates.get(d);
+                    if (this.doPathDFS(prevState, robotsMoved | (1 << deferredRobots.get(d).intValue()), maxRobots, knownStates, depth-1, result, tmpStates)) {
+                        result.add(prevState);
+                        return true;
+                    }
+                }
+            }
         }
         return false;
     }
     
     
     
+    private boolean isPreferredPathMove(final int robotsMoved, final int robot) {
+        //MINIMUM: prefer the robots that are already moved later on the path.
+        //MAXIMUM: prefer the robots that are not moved yet.
+        final boolean isMoved = (0 != (robotsMoved & (1 << robot)));
+        return ((SOLUTION_MODE.MAXIMUM == this.optSolutionMode) ? (false == isMoved) : (true == isMoved));
+    }
+    
+    
+    
     private boolean doPathDFSNoRebound(final int[] thisState, final KnownStates knownStates, final int depth, final List<int[]> result, final int[][] tmpStates, final int[] tmpDirections) throws InterruptedException {
         final KnownStates.Iterator iter = knownStates.iterator(depth);
         final int[] tmpStatesAtDepth = tmpStates[depth];
@@ -423,15 +590,30 @@ public class SolverBFS extends Solver {
     
     
     private class KnownStates {
-        private final AllKeys allKeys;
+        private final KeyRanker ranker;     //null if the board has too many states for AllKeysDense
+        private AllKeys allKeys;
         private final AllStates allStates;
+        private final AllStatesByte allStatesIndexed;  //same as allStates, null if option "store parents" is not set
         private final AllDirections allDirections;
+        private final AllParents allParents;  //null if option "store parents" is not set
+        private final DelayedKeys delayedKeys;  //null if option "delayed duplicates" is not used
         private int currentDepth = -1;
         
         public KnownStates() {
+            this.ranker = KeyRanker.createInstance(board);
             this.allKeys = ((true == isBoardStateInt32) ? new AllKeysInt() : new AllKeysLong());
-            this.allStates = new AllStatesByte();   //TODO add AllStatesShort to support board sizes > 16*16
+            if ((true == optCompressStates) && (false == optStoreParents) && (true == optAllowRebounds) && (board.sizeNumBits * board.getNumRobots() <= 63)) {
+                this.allStates = new AllStatesPacked();
+                this.allStatesIndexed = null;
+            } else {
+                final AllStatesByte allStatesByte = new AllStatesByte();   //TODO add AllStatesShort to support board sizes > 16*16
+                this.allStates = allStatesByte;
+                this.allStatesIndexed = ((true == optStoreParents) ? allStatesByte : null);
+            }
             this.allDirections = new AllDirectionsShort();
+            this.allParents = ((true == optStoreParents) ? new AllParents() : null);
+            this.delayedKeys = (((true == optDelayedDuplicates) && (true == optAllowRebounds) &&
+                    (board.sizeNumBits * board.getNumRobots() <= DelayedKeys.KEY_BITS_MAX)) ? new DelayedKeys() : null);
         }
         
         //store the unique keys of all known states
@@ -469,10 +651,28 @@ public class SolverBFS extends Solver {
                 return this.theSet.getBytesAllocated();
             }
         }
+        //store the unique keys of all known states in a bit set with one bit per possible state
+        //supports any board whose state space fits into memory (for example 4 robots with a board size of 256)
+        private final class AllKeysDense extends AllKeys {
+            private final KeyBitSet theSet;
+            private final KeyMakerLong keyMaker = KeyMakerLong.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard);
+            public AllKeysDense(final KeyRanker ranker) {
+                this.theSet = new KeyBitSet(ranker);
+            }
+            @Override
+            public final boolean add(final int[] state) {
+                final long key = this.keyMaker.run(state);
+                return this.theSet.add(key);
+            }
+            @Override
+            public final long getBytesAllocated() {
+                return this.theSet.getBytesAllocated();
+            }
+        }
         
         //store all known states in a way that allows them to be retrieved later
         private abstract class AllStates {
-            protected final int ARRAY_SIZE = 60 * 100 * 100; //size of each array in the list of arrays. lcm(1,2,3,4,5) = 60
+            protected final int ARRAY_SIZE = 840 * 1000;     //size of each array in the list of arrays. lcm(1,2,...,8) = 840
             protected int numStates = 0;                     //number of states that are stored
             protected int addArrayNum = 0;                   //add: number of arrays in list "allStates"
             protected int addOffset = this.ARRAY_SIZE;       //add: current index inside the current array
@@ -525,6 +725,15 @@ public class SolverBFS extends Solver {
                 }
                 this.numStates++;
             }
+            //random access, used for the path reconstruction from the stored parents
+            public final void get(final int index, final int[] resultState) {
+                final long offset = (long)index * resultState.length;
+                final byte[] array = this.allStatesArrays[(int)(offset / this.ARRAY_SIZE)];
+                int arrayOffset = (int)(offset % this.ARRAY_SIZE);
+                for (int i = 0;  i < resultState.length;  i++) {
+                    resultState[i] = (boardSizeBitMask & array[arrayOffset++]);
+                }
+            }
             private final class AllStatesByteIterator extends AllStates.Iterator {
                 private byte[] iterArray;
                 public AllStatesByteIterator(final int depth) {
@@ -562,6 +771,126 @@ public class SolverBFS extends Solver {
                 return result;
             }
         }
+
+        //store all known states in blocks of sorted and delta-encoded long values
+        //supports states of up to 63 bits (all robots in their original order)
+        private final class AllStatesPacked extends AllStates {
+            private static final int RUN_STATES = 1 << 20;      //number of states that are sorted together
+            private static final int BLOCK_STATES = 1 << 12;    //number of states in one encoded block
+            private long[] runBuffer = new long[BLOCK_STATES];     //grows up to RUN_STATES
+            private int runSize = 0;
+            private final byte[] blockBuffer = new byte[5 + BLOCK_STATES * 9];
+            private byte[][] blocks = new byte[1024][];
+            private int numBlocks = 0;
+            private long blocksBytes = 0;
+            private final List<Integer> depthFirstBlock = new ArrayList<Integer>();
+            private final int s1 = board.sizeNumBits;
+            @Override
+            public final void incrementDepth() {
+                this.flushRun();
+                this.depthFirstBlock.add(Integer.valueOf(this.numBlocks));
+                super.incrementDepth();
+            }
+            @Override
+            public final void add(final int[] state) {
+                long packed = 0;
+                for (int i = state.length - 1;  i >= 0;  --i) {
+                    packed = (packed << this.s1) | state[i];
+                }
+                if (this.runBuffer.length <= this.runSize) {
+                    if (RUN_STATES <= this.runSize) {
+                        this.flushRun();
+                    } else {
+                        this.runBuffer = Arrays.copyOf(this.runBuffer, this.runBuffer.length << 1);
+                    }
+                }
+                this.runBuffer[this.runSize++] = packed;
+                this.numStates++;
+            }
+            //sort the buffered states and append them to the list of blocks
+            private void flushRun() {
+                Arrays.sort(this.runBuffer, 0, this.runSize);
+                for (int start = 0;  start < this.runSize;  start += BLOCK_STATES) {
+                    final int end = Math.min(this.runSize, start + BLOCK_STATES);
+                    int len = writeVarint(this.blockBuffer, 0, end - start);
+                    long prev = 0;
+                    for (int i = start;  i < end;  ++i) {
+                        len = writeVarint(this.blockBuffer, len, this.runBuffer[i] - prev);
+                        prev = this.runBuffer[i];
+                    }
+                    if (this.blocks.length <= this.numBlocks) {
+                        this.blocks = Arrays.copyOf(this.blocks, this.blocks.length << 1);
+                    }
+                    this.blocks[this.numBlocks++] = Arrays.copyOf(this.blockBuffer, len);
+                    this.blocksBytes += len;
+                }
+                this.runSize = 0;
+            }
+            private int writeVarint(final byte[] buffer, int offset, long value) {
+                while (value >= 0x80) {
+                    buffer[offset++] = (byte)(value | 0x80);
+                    value >>>= 7;
+                }
+                buffer[offset++] = (byte)value;
+                return offset;
+            }
+            private final class AllStatesPackedIterator extends AllStates.Iterator {
+                private int blockNum, blockRemaining, offset, runIndex;
+                private final int blocksEnd;
+                private byte[] block;
+                private long value;
+                public AllStatesPackedIterator(final int depth) {
+                    super(depth);
+                    this.blockNum = depthFirstBlock.get(depth).intValue();
+                    this.blocksEnd = ((depth + 1 < depthFirstBlock.size()) ? depthFirstBlock.get(depth + 1).intValue() : numBlocks);
+                    this.blockRemaining = 0;
+                    this.runIndex = 0;
+                }
+                private long readVarint() {
+                    long result = 0;
+                    int shift = 0;
+                    byte b;
+                    while ((b = this.block[this.offset++]) < 0) {
+                        result |= (long)(b & 0x7f) << shift;
+                        shift += 7;
+                    }
+                    return result | ((long)b << shift);
+                }
+                @Override
+                public boolean next(final int[] resultState) {
+                    final boolean hasNext = (this.iterEnd > this.iterCurrent);
+                    if (true == hasNext) {
+                        if ((0 == this.blockRemaining) && (this.blockNum < this.blocksEnd)) {
+                            this.block = blocks[this.blockNum++];
+                            this.offset = 0;
+                            this.blockRemaining = (int)this.readVarint();
+                            this.value = 0;
+                        }
+                        if (0 < this.blockRemaining) {
+                            this.value += this.readVarint();
+                            --this.blockRemaining;
+                        } else {
+                            this.value = runBuffer[this.runIndex++];     //the current depth: states not yet encoded
+                        }
+                        long packed = this.value;
+                        for (int i = 0;  i < resultState.length;  ++i) {
+                            resultState[i] = (int)packed & boardSizeBitMask;
+                            packed >>>= s1;
+                        }
+                        this.iterCurrent++;
+                    }
+                    return hasNext;
+                }
+            }
+            @Override
+            public AllStates.Iterator iterator(final int depth) {
+                return new AllStatesPackedIterator(depth);
+            }
+            @Override
+            public final long getBytesAllocated() {
+                return this.blocksBytes + ((long)this.blocks.length << 3) + ((long)this.runBuffer.length << 3) + this.blockBuffer.length;
+            }
+        }
         
         //store all directions belonging to the known states
         //(implementation is copy/paste from AllStates with some adaptions)
@@ -654,6 +983,152 @@ public class SolverBFS extends Solver {
             }
         }
         
+        //store the index of the predecessor of each known state in a list of int arrays
+        private final class AllParents {
+            private static final int ARRAY_SIZE = 10 * 100 * 100;
+            private int[][] allParentsArrays = new int[32][];
+            private int[] addArray = null;
+            private int addArrayNum = 0;
+            private int addOffset = ARRAY_SIZE;
+            public final void add(final int parentIndex) {
+                //if necessary, allocate an additional array and append it to the list
+                if (this.addOffset >= ARRAY_SIZE) {
+                    if (this.allParentsArrays.length <= this.addArrayNum) {
+                        this.allParentsArrays = Arrays.copyOf(this.allParentsArrays, this.allParentsArrays.length << 1);
+                    }
+                    this.addArray = new int[ARRAY_SIZE];
+                    this.allParentsArrays[this.addArrayNum++] = this.addArray;
+                    this.addOffset = 0;
+                }
+                this.addArray[this.addOffset++] = parentIndex;
+            }
+            public final int get(final int index) {
+                return this.allParentsArrays[index / ARRAY_SIZE][index % ARRAY_SIZE];
+            }
+            public final long getBytesAllocated() {
+                return (long)this.addArrayNum * ARRAY_SIZE * 4;
+            }
+        }
+        
+        //detect duplicate states in batches: buffer the new states, sort them by key
+        //and merge them against the sorted keys of all known states.
+        //supports keys of up to 40 bits (for example 5 robots with a board size of 256)
+        private final class DelayedKeys {
+            private static final int KEY_BITS_MAX = 40;
+            private static final int INDEX_BITS = 24;                   //sortKeys: key << INDEX_BITS | index into buffer
+            private static final int INDEX_MASK = (1 << INDEX_BITS) - 1;
+            private static final long FINAL_FLAG = 1L << 63;            //bufStates: goal has been reached
+            private static final long NEW_FLAG = 1L << 62;              //bufStates: key was not yet known
+            private final KeyMakerLong keyMaker = KeyMakerLong.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard);
+            private final int keyBits = board.sizeNumBits * board.getNumRobots();
+            private final int s1 = board.sizeNumBits;
+            private long[] sortKeys = new long[1 << 16], sortTmp = new long[1 << 16];
+            private long[] bufStates = new long[1 << 16];
+            private int[] bufParents = new int[1 << 16];
+            private int bufSize = 0;
+            private long[] knownKeys = new long[1 << 16], knownTmp = new long[1 << 16];  //sorted keys of all known states
+            private int knownSize = 0;
+            private final int[] tmpState = new int[board.getNumRobots()];
+            private final List<int[]> pendingFinalStates = new ArrayList<int[]>();
+            private final List<Integer> pendingFinalIndexes = new ArrayList<Integer>();
+            public final void add(final int[] state, final boolean isFinal, final int parentIndex) {
+                if (this.bufStates.length <= this.bufSize) {
+                    this.flush();
+                }
+                long packed = 0;
+                for (int i = state.length - 1;  i >= 0;  --i) {
+                    packed = (packed << this.s1) | state[i];
+                }
+                this.bufStates[this.bufSize] = ((true == isFinal) ? (packed | FINAL_FLAG) : packed);
+                this.bufParents[this.bufSize] = parentIndex;
+                this.sortKeys[this.bufSize] = (this.keyMaker.run(state) << INDEX_BITS) | this.bufSize;
+                ++this.bufSize;
+            }
+            public final void flush() {
+                final int numBuffered = this.bufSize;
+                if (0 == numBuffered) {
+                    return;
+                }
+                //LSD radix sort by key. it's stable, so the first occurrence of a key has the lowest index.
+                long[] src = this.sortKeys, dst = this.sortTmp;
+                final int[] count = new int[257];
+                for (int shift = INDEX_BITS;  shift < INDEX_BITS + this.keyBits;  shift += 8) {
+                    Arrays.fill(count, 0);
+                    for (int i = 0;  i < numBuffered;  ++i) {
+                        ++count[((int)(src[i] >>> shift) & 0xff) + 1];
+                    }
+                    for (int i = 1;  i < 257;  ++i) {
+                        count[i] += count[i - 1];
+                    }
+                    for (int i = 0;  i < numBuffered;  ++i) {
+                        final long value = src[i];
+                        dst[count[(int)(value >>> shift) & 0xff]++] = value;
+                    }
+                    final long[] swap = src;  src = dst;  dst = swap;
+                }
+                this.sortKeys = src;
+                this.sortTmp = dst;
+                //merge the sorted keys into the known keys and mark the new ones.
+                if (this.knownTmp.length < this.knownSize + numBuffered) {
+                    this.knownTmp = new long[Math.max(this.knownSize + numBuffered, this.knownTmp.length << 1)];
+                }
+                final long[] known = this.knownKeys, merged = this.knownTmp;
+                final int knownSize = this.knownSize;
+                int k = 0, m = 0, numNew = 0;
+                long prevKey = -1;
+                for (int i = 0;  i < numBuffered;  ++i) {
+                    final long key = src[i] >>> INDEX_BITS;
+                    if (key == prevKey) {
+                        continue;   //duplicate inside the buffer
+                    }
+                    prevKey = key;
+                    while ((k < knownSize) && (known[k] < key)) {
+                        merged[m++] = known[k++];
+                    }
+                    if ((k < knownSize) && (known[k] == key)) {
+                        continue;   //already known
+                    }
+                    merged[m++] = key;
+                    this.bufStates[(int)src[i] & INDEX_MASK] |= NEW_FLAG;
+                    ++numNew;
+                }
+                System.arraycopy(known, k, merged, m, knownSize - k);
+                this.knownKeys = merged;
+                this.knownTmp = known;
+                this.knownSize = m + knownSize - k;
+                statistics.prunesKnownStates += numBuffered - numNew;
+                //store the new states in the order they were generated.
+                for (int i = 0;  i < numBuffered;  ++i) {
+                    final long value = this.bufStates[i];
+                    if (0 != (value & NEW_FLAG)) {
+                        long packed = value;
+                        for (int j = 0;  j < this.tmpState.length;  ++j) {
+                            this.tmpState[j] = (int)packed & boardSizeBitMask;
+                            packed >>>= this.s1;
+                        }
+                        addState(this.tmpState, this.bufParents[i]);
+                        if (0 != (value & FINAL_FLAG)) {
+                            this.pendingFinalStates.add(this.tmpState.clone());
+                            this.pendingFinalIndexes.add(Integer.valueOf(size() - 1));
+                        }
+                    }
+                }
+                this.bufSize = 0;
+                //grow the buffer with the number of known states, so that merging is amortized.
+                if ((this.bufStates.length < this.knownSize) && (this.bufStates.length <= INDEX_MASK)) {
+                    final int newLength = this.bufStates.length << 1;
+                    this.sortKeys = new long[newLength];
+                    this.sortTmp = new long[newLength];
+                    this.bufStates = new long[newLength];
+                    this.bufParents = new int[newLength];
+                }
+            }
+            public final long getBytesAllocated() {
+                return ((long)this.sortKeys.length + this.sortTmp.length + this.bufStates.length + this.knownKeys.length + this.knownTmp.length) * 8 +
+                        (long)this.bufParents.length * 4;
+            }
+        }
+        
         public final class Iterator {
             private final AllStates.Iterator allStatesIter;
             private final AllDirections.Iterator allDirsIter;
@@ -664,6 +1139,10 @@ public class SolverBFS extends Solver {
             public int size() {
                 return this.allStatesIter.size();
             }
+            //index of the state that was returned by the last call of next()
+            public int index() {
+                return this.allStatesIter.iterCurrent - 1;
+            }
             public boolean next(final int[] resultState) {
                 assert resultState.length == board.getNumRobots() : resultState.length;
                 return this.allStatesIter.next(resultState);
@@ -681,17 +1160,76 @@ public class SolverBFS extends Solver {
             this.currentDepth++;
             this.allStates.incrementDepth();
             this.allDirections.incrementDepth();
+            this.migrateKeysIfNeeded();
             return this.currentDepth;
         }
         
+        //replace the trie by a bit set as soon as the trie needs more memory
+        private void migrateKeysIfNeeded() {
+            if ((null == this.ranker) || (this.allKeys instanceof AllKeysDense)) {
+                return;
+            }
+            final long bytes = KeyBitSet.bytesRequired(this.ranker);
+            final Runtime rt = Runtime.getRuntime();
+            final long freeBytes = rt.maxMemory() - (rt.totalMemory() - rt.freeMemory());
+            if ((this.allKeys.getBytesAllocated() > bytes) && (bytes <= freeBytes / 2)) {
+                final AllKeys newKeys = new AllKeysDense(this.ranker);
+                final int[] state = new int[board.getNumRobots()];
+                for (int depth = 0;  depth < this.currentDepth;  ++depth) {
+                    final AllStates.Iterator iter = this.allStates.iterator(depth);
+                    while (true == iter.next(state)) {
+                        newKeys.add(state);     //the keys of all stored states, and nothing else
+                    }
+                }
+                this.allKeys = newKeys;
+            }
+        }
+        
         public final boolean addKey(final int[] state) {
             assert state.length == board.getNumRobots() : state.length;
-            return this.allKeys.add(state);
+            if (true == this.allKeys.add(state)) {
+                return true;
+            }
+            ++statistics.prunesKnownStates;
+            return false;
         }
         
-        public final void addState(final int[] state) {
+        public final void addState(final int[] state, final int parentIndex) {
             assert state.length == board.getNumRobots() : state.length;
             this.allStates.add(state);
+            if (null != this.allParents) {
+                this.allParents.add(parentIndex);
+            }
+        }
+        
+        public final boolean isDelayed() {
+            return (null != this.delayedKeys);
+        }
+        
+        public final void bufferState(final int[] state, final boolean isFinal, final int parentIndex) {
+            assert state.length == board.getNumRobots() : state.length;
+            this.delayedKeys.add(state, isFinal, parentIndex);
+        }
+        
+        public final void flushStates(final List<int[]> finalStates, final List<Integer> finalIndexes) {
+            this.delayedKeys.flush();
+            finalStates.addAll(this.delayedKeys.pendingFinalStates);
+            finalIndexes.addAll(this.delayedKeys.pendingFinalIndexes);
+            this.delayedKeys.pendingFinalStates.clear();
+            this.delayedKeys.pendingFinalIndexes.clear();
+        }
+        
+        public final boolean hasParents() {
+            return (null != this.allParents);
+        }
+        
+        public final int getParent(final int index) {
+            return this.allParents.get(index);
+        }
+        
+        public final void getState(final int index, final int[] resultState) {
+            assert resultState.length == board.getNumRobots() : resultState.length;
+            this.allStatesIndexed.get(index, resultState);
         }
         
         public final void addDirection(final int[] dirs) {
@@ -712,11 +1250,13 @@ public class SolverBFS extends Solver {
             return "size=" + this.allStates.size() + " depth=" + this.currentDepth;
         }
         public final String megaBytesAllocated() {
-            final int keysMB = (int)((this.allKeys.getBytesAllocated() + (1 << 20) - 1) >> 20);
+            final long keysBytes = this.allKeys.getBytesAllocated() + ((null == this.delayedKeys) ? 0 : this.delayedKeys.getBytesAllocated());
+            final int keysMB = (int)((keysBytes + (1 << 20) - 1) >> 20);
             final int statesMB = (int)((this.allStates.getBytesAllocated() + (1 << 20) - 1) >> 20);
             final int dirsMB = (int)((this.allDirections.getBytesAllocated() + (1 << 20) - 1) >> 20);
+            final int parentsMB = ((null == this.allParents) ? 0 : (int)((this.allParents.getBytesAllocated() + (1 << 20) - 1) >> 20));
             return "megabytes allocated: keys=" + keysMB + " states=" + statesMB + " directions=" + dirsMB +
-                    " total=" + (keysMB + statesMB + dirsMB);
+                    " parents=" + parentsMB + " total=" + (keysMB + statesMB + dirsMB + parentsMB);
         }
     }
 
@@ -0,0 +1,71 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * Low-overhead profiling events of the solvers and their data structures.
+ * <p>
+ * If the Java runtime supports the Flight Recorder API (<code>jdk.jfr</code>)
+ * then the events are committed as JFR events, see <code>SolverEventsJfr</code>.
+ * Otherwise all methods do nothing. The JFR classes are loaded by reflection,
+ * so that this program still runs on Java versions without JFR. They are compiled
+ * separately from the optional source folder "src-jfr", if they are missing from
+ * the class path then the events are disabled.
+ */
+abstract class SolverEvents {
+
+    static final SolverEvents INSTANCE = createInstance();
+
+    private static SolverEvents createInstance() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (SolverEvents)Class.forName("driftingdroids.model.SolverEventsJfr").newInstance();
+        } catch (Throwable t) {
+            return new SolverEvents() { };  //JFR not available: do nothing
+        }
+    }
+
+
+
+    /**
+     * one iteration of the IDDFS solver has finished.
+     */
+    void iddfsIteration(final int depthLimit, final long nodesExpanded, final long knownStatesBytes, final long nanos) {
+        //nothing
+    }
+
+    /**
+     * one level of the BFS solver has finished.
+     */
+    void bfsLevel(final int depth, final int numStates, final long nanos) {
+        //nothing
+    }
+
+    /**
+     * a data structure has allocated a new chunk of memory.
+     * @param structure the data structure
+     * @param kind the kind of array: "node" or "leaf"
+     * @param arrayBytes the size of the new array
+     * @param totalBytes the total memory allocated by the data structure now
+     */
+    void arrayAllocated(final Object structure, final String kind, final long arrayBytes, final long totalBytes) {
+        //nothing
+    }
+}
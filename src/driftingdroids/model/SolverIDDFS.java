@@ -33,12 +33,20 @@ public class SolverIDDFS extends Solver {
     private final int[][] obstacles = new int[MAX_DEPTH][];
     private static final int OBSTACLE_ROBOT = (1 << 4);
     private KnownStates knownStates;
+    private KnownStates[] knownStates01;    //solution01: knownStates by goal robot: not moved, last move vertical, last move horizontal, has turned
     private final int goalPosition;
     private final int minRobotLast;
     private final int goalRobot;
     private final boolean isSolution01;
     private final int[] minimumMovesToGoal;
+    private final int[] goalApproachDir;    //endgame table: direction of the move from pos to the goal without any wall in between, or -1
     private final int[] directionIncrement;
+    private final int[] solutionMoves = new int[MAX_DEPTH];
+    private final int[] lastDirs;       //dfsRecursionTracked: last direction of each robot on the current path
+    private KeyDepthMapFlat flatMap;    //1-3 robots: the map of knownStates during the current iteration
+    private final int[] robotsMovedStack = new int[MAX_DEPTH];  //bit set of the robots moved on the current path, by depth
+    private boolean isRobotsMovedPruning;   //SOLUTION_MODE MINIMUM or MAXIMUM: prune paths that can't reach bestRobotsMoved
+    private int bestRobotsMoved;            //number of robots moved of the best solution found, 0 if none yet
     
     private int depthLimit;
     
@@ -48,11 +56,13 @@ public class SolverIDDFS extends Solver {
         this.initObstacles();
         this.states = new int[MAX_DEPTH][this.board.getRobotPositions().length];
         this.directions = new int[MAX_DEPTH][this.board.getRobotPositions().length];
+        this.lastDirs = new int[this.board.getRobotPositions().length];
         this.goalPosition = (null == this.board.getGoal() ? 0 : this.board.getGoal().position);
         this.minRobotLast = (this.isBoardGoalWildcard ? 0 : this.states[0].length - 1); //swapGoalLast
         this.goalRobot = (this.isBoardGoalWildcard ? (null == this.board.getGoal() ? 0 : this.board.getGoal().robotNumber) : this.minRobotLast); //swapGoalLast
         this.isSolution01 = this.board.isSolution01();
         this.minimumMovesToGoal = new int[board.size];
+        this.goalApproachDir = new int[board.size];
         this.directionIncrement = this.board.directionIncrement;
     }
     
@@ -78,27 +88,55 @@ public class SolverIDDFS extends Solver {
     public List<Solution> execute() throws InterruptedException {
         final long startExecute = System.nanoTime();
         this.lastResultSolutions = new ArrayList<Solution>();
+        if (null != this.optSolutionCollector) {
+            this.optSolutionCollector.clear();
+        }
         
-        System.out.println("***** " + this.getClass().getSimpleName() + " *****");
-        System.out.println("options: " + this.getOptionsAsString());
+        final Instrumentation instr = this.instrumentation;
+        final boolean isSummary = instr.isEnabled(Instrumentation.Level.SUMMARY);
+        if (true == isSummary) {
+            instr.message(Instrumentation.Level.SUMMARY, "***** " + this.getClass().getSimpleName() + " *****");
+            instr.message(Instrumentation.Level.SUMMARY, "options: " + this.getOptionsAsString());
+        }
+        this.initNodeSampling();
+        this.statistics.reset();
         
         if (null == this.board.getGoal()) {
-            System.out.println("no goal is set - nothing to solve!");
+            if (true == isSummary) {
+                instr.message(Instrumentation.Level.SUMMARY, "no goal is set - nothing to solve!");
+            }
         } else {
             this.states[0] = this.board.getRobotPositions().clone();
             swapGoalLast(this.states[0]);   //goal robot is always the last one.
-            System.out.println("startState=" + this.stateString(this.states[0]));
+            if (true == isSummary) {
+                instr.message(Instrumentation.Level.SUMMARY, "startState=" + this.stateString(this.states[0]));
+            }
             
             Arrays.fill(this.directions[0], DIRECTION_NOT_MOVED_YET);
             
-            this.iddfs();
+            try {
+                this.iddfs();
+            } catch (SearchComplete e) {
+                this.flatMap = null;
+                this.initObstacles();   //the robot positions of the unfinished recursion are still set
+            }
             
             this.solutionStoredStates = this.knownStates.size();
             this.solutionMemoryMegabytes = this.knownStates.getMegaBytesAllocated();
+            this.knownStates.release();
             this.knownStates = null;    //allow garbage collection
+            if (null != this.knownStates01) {
+                for (int i = 1;  i < this.knownStates01.length;  ++i) {
+                    this.solutionStoredStates += this.knownStates01[i].size();
+                    this.solutionMemoryMegabytes += this.knownStates01[i].getMegaBytesAllocated();
+                    //not released: the factory keeps only one map per thread, the one of knownStates
+                }
+                this.knownStates01 = null;
+            }
         }
         this.sortSolutions();
         
+        this.statistics.finish();
         this.solutionMilliSeconds = (System.nanoTime() - startExecute) / 1000000L;
         return this.lastResultSolutions;
     }
@@ -136,33 +174,101 @@ public class SolverIDDFS extends Solver {
     
     
     
+    private void precomputeGoalApproach() {
+        //retrograde from the goal: walk backwards along each direction as long as no wall is in the way.
+        //the goal robot at such a position reaches the goal with one move, unless another robot is in the way,
+        //and it stops there if there's a wall behind the goal or another robot.
+        this.initWallStop();    //column[]
+        Arrays.fill(this.goalApproachDir, -1);
+        for (int dir = 0;  dir < 4;  ++dir) {
+            final boolean[] walls = this.boardWalls[dir];
+            final int dirIncr = this.directionIncrement[dir];
+            for (int pos = this.goalPosition - dirIncr;  (pos >= 0) && (pos < this.goalApproachDir.length) && (false == walls[pos]);  pos -= dirIncr) {
+                this.goalApproachDir[pos] = dir;
+            }
+        }
+    }
+    
+    
+    
     private void iddfs() throws InterruptedException {
         final long nanoStart = System.nanoTime();
         this.precomputeMinimumMovesToGoal();
+        this.precomputeGoalApproach();
         this.knownStates = null;
-        this.knownStates = new KnownStates();
+        this.knownStates01 = null;
+        if ((true == this.isSolution01) && (false == this.isBoardGoalWildcard) && (true == this.optAllowRebounds)) {
+            //the four maps share the memory cap of this solver
+            this.knownStates01 = new KnownStates[] { new KnownStates(4), new KnownStates(4), new KnownStates(4), new KnownStates(4) };
+            this.knownStates = this.knownStates01[0];
+        } else {
+            this.knownStates = new KnownStates(1);
+        }
+        //the preferred number of robots moved is part of the search, unless a collector decides about the order of the solutions
+        this.isRobotsMovedPruning = ((null == this.optSolutionCollector) &&
+                ((SOLUTION_MODE.MAXIMUM == this.optSolutionMode) || (SOLUTION_MODE.MINIMUM == this.optSolutionMode)));
+        this.bestRobotsMoved = 0;
+        long statesPrevious = 0;
         for (this.depthLimit = 2;  MAX_DEPTH > this.depthLimit;  ++this.depthLimit) {
             final long nanoDfs = System.nanoTime();
+            final long nodesDfs = this.statistics.getNodesExpanded();
+            final long statesDfs = this.statistics.putIfGreaterHits;
             if ((false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds)) {
-                this.dfsRecursionFast(1, -1, -1, this.states[0]);
+                this.flatMap = this.knownStates.getFlatMap();
+                if ((null != this.flatMap) && (this.states[0].length <= 3)) {
+                    this.initWallStop();
+                    switch (this.states[0].length) {
+                    case 1:  this.dfsRecursionSmall1(1, -1, -1, this.states[0]); break;
+                    case 2:  this.dfsRecursionSmall2(1, -1, -1, this.states[0]); break;
+                    default: this.dfsRecursionSmall3(1, -1, -1, this.states[0]); break;
+                    }
+                } else {
+                    this.dfsRecursionFast(1, -1, -1, this.states[0]);
+                }
+            } else if ((true == this.isBoardGoalWildcard) && (false == this.isSolution01)) {
+                System.arraycopy(this.directions[0], 0, this.lastDirs, 0, this.lastDirs.length);
+                this.dfsRecursionWildcard(1, -1, -1, this.states[0], 0);
+            } else if (false == this.isSolution01) {
+                System.arraycopy(this.directions[0], 0, this.lastDirs, 0, this.lastDirs.length);
+                this.dfsRecursionTracked(1, -1, -1, this.states[0], 0);
+            } else if ((false == this.isBoardGoalWildcard) && (true == this.optAllowRebounds)) {
+                System.arraycopy(this.directions[0], 0, this.lastDirs, 0, this.lastDirs.length);
+                this.dfsRecursionSolution01(1, -1, -1, this.states[0], 0);
             } else {
                 this.dfsRecursion(1, -1, -1, this.states[0], this.directions[0]);
             }
             final long nanoEnd = System.nanoTime();
-            System.out.println("iddfs:  finished depthLimit=" + this.depthLimit +
-                    " megaBytes=" + this.knownStates.getMegaBytesAllocated() +
-                    " time=" + (nanoEnd - nanoDfs) / 1000000L + "ms" + 
-                    " totalTime=" + (nanoEnd - nanoStart) / 1000000L + "ms");
-            if (false == this.lastResultSolutions.isEmpty()) {
+            SolverEvents.INSTANCE.iddfsIteration(this.depthLimit, this.statistics.getNodesExpanded() - nodesDfs,
+                    this.knownStates.getBytesAllocated(), nanoEnd - nanoDfs);
+            if (true == this.instrumentation.isEnabled(Instrumentation.Level.PER_DEPTH)) {
+                this.instrumentation.depth(this, this.depthLimit, this.statistics.getNodesExpanded() - nodesDfs, nanoEnd - nanoDfs);
+                this.instrumentation.message(Instrumentation.Level.PER_DEPTH, "iddfs:  finished depthLimit=" + this.depthLimit +
+                        " megaBytes=" + this.knownStates.getMegaBytesAllocated() +
+                        " time=" + (nanoEnd - nanoDfs) / 1000000L + "ms" + 
+                        " totalTime=" + (nanoEnd - nanoStart) / 1000000L + "ms");
+            }
+            if (true == this.isSolutionFound()) {
                 break;  //found solution(s)
             }
+            final long statesLast = this.statistics.putIfGreaterHits - statesDfs;
+            this.knownStates.iterationFinished(statesPrevious, statesLast);
+            if (null != this.knownStates01) {
+                for (int i = 1;  i < this.knownStates01.length;  ++i) {
+                    this.knownStates01[i].iterationFinished(statesPrevious, statesLast);
+                }
+            }
+            statesPrevious = statesLast;
         }
+        this.flatMap = null;
     }
     
     
     
     // standard version: supports wildcard goal, solution01 special case and option noRebounds
     private void dfsRecursion(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int[] oldDirs) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
         final int height = this.depthLimit - depth + 1;
         final int minMovesToGoal;
         if (true == this.isBoardGoalWildcard) {
@@ -176,8 +282,16 @@ public class SolverIDDFS extends Solver {
             minMovesToGoal = this.minimumMovesToGoal[oldState[this.goalRobot]];
         }
         if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
             return; //useless to move any robot: can't reach goal
         }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
         final int[] obstacles = this.obstacles[depth];
         final int[] newState = this.states[depth];
         final int depth1 = depth + 1;
@@ -237,13 +351,279 @@ public class SolverIDDFS extends Solver {
     
     
     
+    // tracked version: (false == this.isSolution01), supports wildcard goal and option noRebounds.
+    // the last direction of each robot is updated in place (this.lastDirs) instead of copied for each node,
+    // and the robots that have already made a perpendicular move are tracked in the bit mask "turned".
+    private void dfsRecursionTracked(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int turned) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int height = this.depthLimit - depth + 1;
+        final int minMovesToGoal;
+        if (true == this.isBoardGoalWildcard) {
+            int min = Integer.MAX_VALUE;
+            for (final int pos : oldState) {
+                final int tmp = this.minimumMovesToGoal[pos];
+                if (min > tmp) { min = tmp; }
+            }
+            minMovesToGoal = min;
+        } else {
+            minMovesToGoal = this.minimumMovesToGoal[oldState[this.goalRobot]];
+        }
+        if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] obstacles = this.obstacles[depth];
+        final int[] newState = this.states[depth];
+        final int[] lastDirs = this.lastDirs;
+        final int depth1 = depth + 1;
+        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        System.arraycopy(oldState, 0, newState, 0, oldState.length);
+        final boolean doRecursion = (this.depthLimit > depth1);
+        //move all robots
+        int robo = 0;
+        for (final int oldRoboPos : oldState) {
+            if ((minMovesToGoal == height) && (this.goalRobot != robo) && (this.goalRobot >= 0)) {
+                ++robo;
+                continue;   //useless to move this robot: can't reach goal
+            }
+            final int oldDir = lastDirs[robo];
+            final int obstacleInit = obstacles[oldRoboPos];
+            int dir = 0;
+            for (final int dirIncr : this.directionIncrement) {
+                if (((true == this.optAllowRebounds) || ((oldDir != dir) && (oldDir != (dir ^ 2))))
+                        && ((prevRobo != robo) || (prevDirBit0 != (dir & 1)))) {
+                    int newRoboPos = oldRoboPos;
+                    int obstacle = obstacleInit;
+                    final int wallMask = (1 << dir);
+                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
+                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
+                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
+                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
+                            newRoboPos -= dirIncr;
+                            break;
+                        }
+                    }
+                    //the robot has actually moved
+                    if (oldRoboPos != newRoboPos) {
+                        newState[robo] = newRoboPos;
+                        //the new state is not already known (i.e. stored in knownStates)
+                        if (true == this.knownStates.add(newState, height)) {
+                            final int newTurned = (((oldDir < 4) && (0 != ((oldDir ^ dir) & 1))) ? (turned | (1 << robo)) : turned);
+                            lastDirs[robo] = dir;
+                            if (true == doRecursion) {
+                                this.dfsRecursionTracked(depth1, robo, (dir & 1), newState, newTurned);
+                            } else {
+                                this.dfsLastTracked(depth1, robo, (dir & 1), newState, newTurned);
+                            }
+                            lastDirs[robo] = oldDir;
+                        }
+                    }
+                }
+                ++dir;
+            }
+            newState[robo++] = oldRoboPos;
+        }
+        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
+    // solution01 version: (false == this.isBoardGoalWildcard) && (true == this.isSolution01) && (true == this.optAllowRebounds)
+    // the goal robot must not visit the goal before the last move, and it must make a perpendicular move.
+    // the future of a state depends only on the robot positions and on the "goal robot has turned" bit,
+    // or the axis of its last move if it hasn't turned yet. so the states are stored in one of the
+    // four knownStates01, depending on these.
+    private void dfsRecursionSolution01(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int turned) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int minMovesToGoal = this.minimumMovesToGoal[oldState[this.goalRobot]];
+        final int height = this.depthLimit - depth + 1;
+        if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] obstacles = this.obstacles[depth];
+        final int[] newState = this.states[depth];
+        final int[] lastDirs = this.lastDirs;
+        final int depth1 = depth + 1;
+        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        System.arraycopy(oldState, 0, newState, 0, oldState.length);
+        final boolean doRecursion = (this.depthLimit > depth1);
+        //move all robots
+        int robo = 0;
+        for (final int oldRoboPos : oldState) {
+            if ((minMovesToGoal == height) && (this.goalRobot != robo)) {
+                ++robo;
+                continue;   //useless to move this robot: can't reach goal
+            }
+            final int oldDir = lastDirs[robo];
+            final int obstacleInit = obstacles[oldRoboPos];
+            int dir = 0;
+            for (final int dirIncr : this.directionIncrement) {
+                //the goal robot may move back along the same axis: it can return to the positions of an earlier state,
+                //which is then another state because the goal robot has turned in the meantime.
+                if ((prevRobo != robo) || (prevDirBit0 != (dir & 1)) || (this.goalRobot == robo)) {
+                    int newRoboPos = oldRoboPos;
+                    int obstacle = obstacleInit;
+                    final int wallMask = (1 << dir);
+                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
+                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
+                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
+                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
+                            newRoboPos -= dirIncr;
+                            break;
+                        }
+                    }
+                    //the robot has actually moved, and the goal robot has _NOT_ arrived at the goal
+                    if ((oldRoboPos != newRoboPos) && ((this.goalPosition != newRoboPos) || (this.goalRobot != robo))) {
+                        newState[robo] = newRoboPos;
+                        final int newTurned = (((oldDir < 4) && (0 != ((oldDir ^ dir) & 1))) ? (turned | (1 << robo)) : turned);
+                        final int goalDir = ((this.goalRobot == robo) ? dir : lastDirs[this.goalRobot]);
+                        final KnownStates known = this.knownStates01[(0 != (newTurned & (1 << this.goalRobot))) ? 3 :
+                                ((DIRECTION_NOT_MOVED_YET == goalDir) ? 0 : 1 + (goalDir & 1))];
+                        //the new state is not already known (i.e. stored in knownStates)
+                        if (true == known.add(newState, height)) {
+                            lastDirs[robo] = dir;
+                            if (true == doRecursion) {
+                                this.dfsRecursionSolution01(depth1, robo, (dir & 1), newState, newTurned);
+                            } else {
+                                this.dfsLastTracked(depth1, robo, (dir & 1), newState, newTurned);
+                            }
+                            lastDirs[robo] = oldDir;
+                        }
+                    }
+                }
+                ++dir;
+            }
+            newState[robo++] = oldRoboPos;
+        }
+        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
+    // wildcard version: (true == this.isBoardGoalWildcard) && (false == this.isSolution01), supports option noRebounds.
+    // the smallest and second smallest distance of the robots to the goal give the minMovesToGoal of each child
+    // in constant time, so that the useless children are pruned before they are added to knownStates.
+    private void dfsRecursionWildcard(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int turned) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int height = this.depthLimit - depth + 1;
+        final int[] minimumMovesToGoal = this.minimumMovesToGoal;
+        int min1 = Integer.MAX_VALUE, min2 = Integer.MAX_VALUE, minRobo = -1;
+        for (int robo = 0;  robo < oldState.length;  ++robo) {
+            final int tmp = minimumMovesToGoal[oldState[robo]];
+            if (min1 > tmp) {
+                min2 = min1;  min1 = tmp;  minRobo = robo;
+            } else if (min2 > tmp) {
+                min2 = tmp;
+            }
+        }
+        if (min1 > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, min1))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] obstacles = this.obstacles[depth];
+        final int[] newState = this.states[depth];
+        final int[] lastDirs = this.lastDirs;
+        final int depth1 = depth + 1;
+        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        System.arraycopy(oldState, 0, newState, 0, oldState.length);
+        final boolean doRecursion = (this.depthLimit > depth1);
+        //move all robots
+        int robo = 0;
+        for (final int oldRoboPos : oldState) {
+            final int minOthers = ((minRobo == robo) ? min2 : min1);    //minMovesToGoal of the robots that don't move
+            final int oldDir = lastDirs[robo];
+            final int obstacleInit = obstacles[oldRoboPos];
+            int dir = 0;
+            for (final int dirIncr : this.directionIncrement) {
+                if (((true == this.optAllowRebounds) || ((oldDir != dir) && (oldDir != (dir ^ 2))))
+                        && ((prevRobo != robo) || (prevDirBit0 != (dir & 1)))) {
+                    int newRoboPos = oldRoboPos;
+                    int obstacle = obstacleInit;
+                    final int wallMask = (1 << dir);
+                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
+                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
+                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
+                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
+                            newRoboPos -= dirIncr;
+                            break;
+                        }
+                    }
+                    //the robot has actually moved
+                    if (oldRoboPos != newRoboPos) {
+                        //the new state can reach the goal within its height (height - 1)
+                        if ((minOthers < height) || (minimumMovesToGoal[newRoboPos] < height)) {
+                            newState[robo] = newRoboPos;
+                            //the new state is not already known (i.e. stored in knownStates)
+                            if (true == this.knownStates.add(newState, height)) {
+                                final int newTurned = (((oldDir < 4) && (0 != ((oldDir ^ dir) & 1))) ? (turned | (1 << robo)) : turned);
+                                lastDirs[robo] = dir;
+                                if (true == doRecursion) {
+                                    this.dfsRecursionWildcard(depth1, robo, (dir & 1), newState, newTurned);
+                                } else {
+                                    this.dfsLastTracked(depth1, robo, (dir & 1), newState, newTurned);
+                                }
+                                lastDirs[robo] = oldDir;
+                            }
+                        } else {
+                            ++this.statistics.prunesMinimumMoves;
+                        }
+                    }
+                }
+                ++dir;
+            }
+            newState[robo++] = oldRoboPos;
+        }
+        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
     // fast version: (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds)
     private void dfsRecursionFast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
         final int minMovesToGoal = this.minimumMovesToGoal[oldState[this.goalRobot]];
         final int height = this.depthLimit - depth + 1;
         if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
             return; //useless to move any robot: can't reach goal
         }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
         final int[] obstacles = this.obstacles[depth];
         final int[] newState = this.states[depth];
         final int depth1 = depth + 1;
@@ -274,8 +654,10 @@ public class SolverIDDFS extends Solver {
                         //the robot has actually moved
                         if (oldRoboPos != newRoboPos) {
                             newState[robo] = newRoboPos;
-                            //the new state is not already known (i.e. stored in knownStates)
-                            if (true == this.knownStates.add(newState, height)) {
+                            //before the last move the goal must be in line with the goal robot (endgame table),
+                            //and the new state is not already known (i.e. stored in knownStates)
+                            if (((true == doRecursion) || (this.goalApproachDir[newState[this.goalRobot]] >= 0))
+                                    && (true == this.knownStates.add(newState, height))) {
                                 if (true == doRecursion) {
                                     this.dfsRecursionFast(depth1, robo, (dir & 1), newState);
                                 } else {
@@ -297,6 +679,11 @@ public class SolverIDDFS extends Solver {
     // standard version: supports wildcard goal, solution01 special case and option noRebounds
     private void dfsLast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int[] oldDirs) throws InterruptedException {
         if (Thread.interrupted()) { throw new InterruptedException(); }
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(this.robotsMovedStack[depth - 2] | (1 << prevRobo), 1, 1))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move the goal robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
         final int[] obstacles = this.obstacles[depth];
         for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
         //move goal robot(s) only
@@ -334,38 +721,320 @@ public class SolverIDDFS extends Solver {
     
     
     
+    // tracked version: (false == this.isSolution01), supports wildcard goal and option noRebounds
+    private void dfsLastTracked(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState, final int turned) throws InterruptedException {
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(this.robotsMovedStack[depth - 2] | (1 << prevRobo), 1, 1))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move the goal robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] obstacles = this.obstacles[depth];
+        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
+        //move goal robot(s) only
+        for (int robo = this.minRobotLast;  robo < oldState.length;  ++robo) {
+            final int oldRoboPos = oldState[robo];
+            final int oldDir = this.lastDirs[robo];
+            final boolean hasTurned = (0 != (turned & (1 << robo)));
+            final int obstacleInit = obstacles[oldRoboPos];
+            int dir = 0;
+            for (final int dirIncr : this.directionIncrement) {
+                if (((true == this.optAllowRebounds) || ((oldDir != dir) && (oldDir != (dir ^ 2))))
+                    && ((prevRobo != robo) || (prevDirBit0 != (dir & 1)))) {
+                    int newRoboPos = oldRoboPos;
+                    int obstacle = obstacleInit;
+                    final int wallMask = (1 << dir);
+                    while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
+                        newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
+                        obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
+                        if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
+                            newRoboPos -= dirIncr;
+                            break;
+                        }
+                    }
+                    //the robot has arrived at the goal, and it has made a perpendicular move (same as hasPerpendicularMove)
+                    if ((this.goalPosition == newRoboPos)
+                            && ((true == hasTurned) || ((oldDir < 4) && (0 != ((oldDir ^ dir) & 1))))) {
+                        System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
+                        this.states[depth][robo] = newRoboPos;
+                        this.buildSolution(depth);
+                    }
+                }
+                ++dir;
+            }
+        }
+        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
     // fast version: (false == this.isBoardGoalWildcard) && (false == this.isSolution01) && (true == this.optAllowRebounds)
     private void dfsLastFast(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
         if (Thread.interrupted()) { throw new InterruptedException(); }
-        final int[] obstacles = this.obstacles[depth];
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(this.robotsMovedStack[depth - 2] | (1 << prevRobo), 1, 1))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move the goal robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
         final int oldRoboPos = oldState[this.goalRobot];
-        for (final int pos : oldState) { obstacles[pos] |= OBSTACLE_ROBOT; }  //set robot positions
-        int dir = 0;
-        final int obstacleInit = obstacles[oldRoboPos];
-        //move goal robot only
-        for (final int dirIncr : this.directionIncrement) {
-            if ((prevRobo != this.goalRobot) || (prevDirBit0 != (dir & 1))) {
-                int newRoboPos = oldRoboPos;
-                int obstacle = obstacleInit;
-                final int wallMask = (1 << dir);
-                while (0 == (obstacle & wallMask)) {        //move the robot until it reaches a wall or another robot.
-                    newRoboPos += dirIncr;                  //NOTE: we rely on the fact that all boards are surrounded
-                    obstacle = obstacles[newRoboPos];       //by outer walls. without the outer walls we would need
-                    if (0 != (obstacle & OBSTACLE_ROBOT)) { //some additional boundary checking here.
-                        newRoboPos -= dirIncr;
-                        break;
+        //endgame table: the goal robot can reach the goal in one move only along this direction
+        final int dir = this.goalApproachDir[oldRoboPos];
+        if ((dir < 0) || ((prevRobo == this.goalRobot) && (prevDirBit0 == (dir & 1)))) {
+            return;
+        }
+        //the other robots must not be in the way, and the goal robot must be stopped at the goal by a wall or by a robot
+        final int goalPos = this.goalPosition;
+        final int behindGoal = goalPos + this.directionIncrement[dir];
+        final int low = Math.min(oldRoboPos, goalPos), high = Math.max(oldRoboPos, goalPos);
+        final boolean isVertical = (0 == (dir & 1));
+        final int goalColumn = this.column[goalPos];
+        boolean isStopped = this.boardWalls[dir][goalPos];
+        for (final int pos : oldState) {
+            if (pos == behindGoal) {
+                isStopped = true;
+            } else if ((pos >= low) && (pos <= high) && (pos != oldRoboPos) && ((false == isVertical) || (this.column[pos] == goalColumn))) {
+                return; //blocked by another robot
+            }
+        }
+        //the robot has arrived at the goal
+        if (true == isStopped) {
+            System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
+            this.states[depth][this.goalRobot] = goalPos;
+            this.buildSolution(depth);
+        }
+    }
+    
+    
+    
+    // final position of a robot that moves from pos in direction dir and may be stopped by one of the other robots
+    private int stopSmall(final int pos, final int dir, final int other1, final int other2) {
+        int stop = this.wallStop[dir][pos];
+        final int dirIncr = this.directionIncrement[dir];
+        final boolean isHorizontal = (0 != (dir & 1));  //the positions between pos and stop are in the same row
+        if (dirIncr > 0) {
+            if ((other1 > pos) && (other1 <= stop) && ((true == isHorizontal) || (this.column[other1] == this.column[pos]))) {
+                stop = other1 - dirIncr;
+            }
+            if ((other2 > pos) && (other2 <= stop) && ((true == isHorizontal) || (this.column[other2] == this.column[pos]))) {
+                stop = other2 - dirIncr;
+            }
+        } else {
+            if ((other1 < pos) && (other1 >= stop) && ((true == isHorizontal) || (this.column[other1] == this.column[pos]))) {
+                stop = other1 - dirIncr;
+            }
+            if ((other2 < pos) && (other2 >= stop) && ((true == isHorizontal) || (this.column[other2] == this.column[pos]))) {
+                stop = other2 - dirIncr;
+            }
+        }
+        return stop;
+    }
+    
+    
+    
+    // same as knownStates.add(), for the keys of KeyMakerInt11, KeyMakerInt21 and KeyMakerInt32
+    private boolean addSmall(final int key, final int height) {
+        if (true == this.flatMap.putIfGreater(key, height)) {
+            ++this.statistics.putIfGreaterHits;
+            return true;
+        }
+        ++this.statistics.putIfGreaterMisses;
+        ++this.statistics.prunesKnownStates;
+        return false;
+    }
+    
+    
+    
+    // 1 robot version of dfsRecursionFast: robot 0 is the goal robot
+    private void dfsRecursionSmall1(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int r0 = oldState[0];
+        final int height = this.depthLimit - depth + 1;
+        if (this.minimumMovesToGoal[r0] > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] newState = this.states[depth];
+        final int depth1 = depth + 1;
+        final boolean doRecursion = (this.depthLimit > depth1);
+        for (int dir = 0;  dir < 4;  ++dir) {
+            if (prevDirBit0 != (dir & 1)) {
+                final int newPos = this.wallStop[dir][r0];
+                if ((r0 != newPos) && ((true == doRecursion) || (this.goalApproachDir[newPos] >= 0)) && (true == this.addSmall(newPos, height))) {
+                    newState[0] = newPos;
+                    if (true == doRecursion) {
+                        this.dfsRecursionSmall1(depth1, 0, (dir & 1), newState);
+                    } else {
+                        this.dfsLastSmall(depth1, 0, (dir & 1), newState);
                     }
                 }
-                //the robot has arrived at the goal
-                if (this.goalPosition == newRoboPos) {
-                    System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
-                    this.states[depth][this.goalRobot] = newRoboPos;
-                    this.buildSolution(depth);
+            }
+        }
+    }
+    
+    
+    
+    // 2 robots version of dfsRecursionFast: robot 1 is the goal robot
+    private void dfsRecursionSmall2(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int r0 = oldState[0], r1 = oldState[1];
+        final int minMovesToGoal = this.minimumMovesToGoal[r1];
+        final int height = this.depthLimit - depth + 1;
+        if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] newState = this.states[depth];
+        final int depth1 = depth + 1;
+        final boolean doRecursion = (this.depthLimit > depth1);
+        final boolean isGoalInLine = ((true == doRecursion) || (this.goalApproachDir[r1] >= 0));  //endgame table, see dfsRecursionFast
+        final int s1 = this.board.sizeNumBits;
+        newState[1] = r1;
+        if (minMovesToGoal < height) {
+            for (int dir = 0;  dir < 4;  ++dir) {
+                if ((0 != prevRobo) || (prevDirBit0 != (dir & 1))) {
+                    final int newPos = this.stopSmall(r0, dir, r1, r1);
+                    if ((r0 != newPos) && (true == isGoalInLine) && (true == this.addSmall(newPos | (r1 << s1), height))) {
+                        newState[0] = newPos;
+                        if (true == doRecursion) {
+                            this.dfsRecursionSmall2(depth1, 0, (dir & 1), newState);
+                        } else {
+                            this.dfsLastSmall(depth1, 0, (dir & 1), newState);
+                        }
+                    }
+                }
+            }
+        }
+        newState[0] = r0;
+        for (int dir = 0;  dir < 4;  ++dir) {
+            if ((1 != prevRobo) || (prevDirBit0 != (dir & 1))) {
+                final int newPos = this.stopSmall(r1, dir, r0, r0);
+                if ((r1 != newPos) && ((true == doRecursion) || (this.goalApproachDir[newPos] >= 0)) && (true == this.addSmall(r0 | (newPos << s1), height))) {
+                    newState[1] = newPos;
+                    if (true == doRecursion) {
+                        this.dfsRecursionSmall2(depth1, 1, (dir & 1), newState);
+                    } else {
+                        this.dfsLastSmall(depth1, 1, (dir & 1), newState);
+                    }
                 }
             }
-            ++dir;
         }
-        for (final int pos : oldState) { obstacles[pos] ^= OBSTACLE_ROBOT; }  //unset robot positions
+    }
+    
+    
+    
+    // 3 robots version of dfsRecursionFast: robot 2 is the goal robot
+    private void dfsRecursionSmall3(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (0 == --this.nodeSampleCountdown) {
+            this.sampleNode(depth, oldState);
+        }
+        final int r0 = oldState[0], r1 = oldState[1], r2 = oldState[2];
+        final int minMovesToGoal = this.minimumMovesToGoal[r2];
+        final int height = this.depthLimit - depth + 1;
+        if (minMovesToGoal > height) {
+            ++this.statistics.prunesMinimumMoves;
+            return; //useless to move any robot: can't reach goal
+        }
+        final int robotsMoved = ((depth > 1) ? (this.robotsMovedStack[depth - 2] | (1 << prevRobo)) : 0);
+        this.robotsMovedStack[depth - 1] = robotsMoved;
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(robotsMoved, height, minMovesToGoal))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move any robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int[] newState = this.states[depth];
+        final int depth1 = depth + 1;
+        final boolean doRecursion = (this.depthLimit > depth1);
+        final boolean isGoalInLine = ((true == doRecursion) || (this.goalApproachDir[r2] >= 0));  //endgame table, see dfsRecursionFast
+        final int s1 = this.board.sizeNumBits, s2 = s1 + s1;
+        final int key2 = r2 << s2;
+        newState[1] = r1;
+        newState[2] = r2;
+        if (minMovesToGoal < height) {
+            for (int dir = 0;  dir < 4;  ++dir) {
+                if ((0 != prevRobo) || (prevDirBit0 != (dir & 1))) {
+                    final int newPos = this.stopSmall(r0, dir, r1, r2);
+                    if ((r0 != newPos) && (true == isGoalInLine) && (true == this.addSmall(((newPos < r1) ? (newPos | (r1 << s1)) : (r1 | (newPos << s1))) | key2, height))) {
+                        newState[0] = newPos;
+                        if (true == doRecursion) {
+                            this.dfsRecursionSmall3(depth1, 0, (dir & 1), newState);
+                        } else {
+                            this.dfsLastSmall(depth1, 0, (dir & 1), newState);
+                        }
+                    }
+                }
+            }
+            newState[0] = r0;
+            for (int dir = 0;  dir < 4;  ++dir) {
+                if ((1 != prevRobo) || (prevDirBit0 != (dir & 1))) {
+                    final int newPos = this.stopSmall(r1, dir, r0, r2);
+                    if ((r1 != newPos) && (true == isGoalInLine) && (true == this.addSmall(((r0 < newPos) ? (r0 | (newPos << s1)) : (newPos | (r0 << s1))) | key2, height))) {
+                        newState[1] = newPos;
+                        if (true == doRecursion) {
+                            this.dfsRecursionSmall3(depth1, 1, (dir & 1), newState);
+                        } else {
+                            this.dfsLastSmall(depth1, 1, (dir & 1), newState);
+                        }
+                    }
+                }
+            }
+            newState[1] = r1;
+        }
+        newState[0] = r0;
+        final int key01 = ((r0 < r1) ? (r0 | (r1 << s1)) : (r1 | (r0 << s1)));
+        for (int dir = 0;  dir < 4;  ++dir) {
+            if ((2 != prevRobo) || (prevDirBit0 != (dir & 1))) {
+                final int newPos = this.stopSmall(r2, dir, r0, r1);
+                if ((r2 != newPos) && ((true == doRecursion) || (this.goalApproachDir[newPos] >= 0)) && (true == this.addSmall(key01 | (newPos << s2), height))) {
+                    newState[2] = newPos;
+                    if (true == doRecursion) {
+                        this.dfsRecursionSmall3(depth1, 2, (dir & 1), newState);
+                    } else {
+                        this.dfsLastSmall(depth1, 2, (dir & 1), newState);
+                    }
+                }
+            }
+        }
+    }
+    
+    
+    
+    // 1-3 robots version of dfsLastFast
+    private void dfsLastSmall(final int depth, final int prevRobo, final int prevDirBit0, final int[] oldState) throws InterruptedException {
+        if (Thread.interrupted()) { throw new InterruptedException(); }
+        if ((0 != this.bestRobotsMoved) && (true == this.isRobotsMovedPruned(this.robotsMovedStack[depth - 2] | (1 << prevRobo), 1, 1))) {
+            ++this.statistics.prunesRobotsMoved;
+            return; //useless to move the goal robot: can't reach the number of robots moved of the best solution
+        }
+        ++this.statistics.nodesExpanded[depth - 1];
+        final int goalRobo = this.goalRobot;
+        final int oldRoboPos = oldState[goalRobo];
+        if (this.goalApproachDir[oldRoboPos] < 0) {
+            return; //endgame table: the goal is not in line with the goal robot
+        }
+        final int other1 = ((goalRobo > 0) ? oldState[0] : oldRoboPos);     //the robot itself doesn't stop its move
+        final int other2 = ((goalRobo > 1) ? oldState[1] : other1);
+        //move goal robot only
+        for (int dir = 0;  dir < 4;  ++dir) {
+            if (((prevRobo != goalRobo) || (prevDirBit0 != (dir & 1)))
+                    && (this.goalPosition == this.stopSmall(oldRoboPos, dir, other1, other2))) {
+                //the robot has arrived at the goal
+                System.arraycopy(oldState, 0, this.states[depth], 0, oldState.length);
+                this.states[depth][goalRobo] = this.goalPosition;
+                this.buildSolution(depth);
+            }
+        }
     }
     
     
@@ -387,35 +1056,83 @@ public class SolverIDDFS extends Solver {
     
     
     
+    private boolean isRobotsMovedPruned(final int robotsMoved, final int height, final int minMovesToGoal) {
+        //the solution mode prefers more (MAXIMUM) or less (MINIMUM) robots moved. ties are not pruned,
+        //so that the sorting of the solutions still sees all solutions that are equal to the best one.
+        //the goal robot needs at least minMovesToGoal of the remaining moves (and the last one),
+        //so the other robots can only use the rest of them.
+        final int numMoved = Integer.bitCount(robotsMoved);
+        final boolean isGoalRobotMoved = ((true == this.isBoardGoalWildcard) || (0 != (robotsMoved & (1 << this.goalRobot))));
+        if (SOLUTION_MODE.MAXIMUM == this.optSolutionMode) {
+            final int maxMoved = ((true == this.isBoardGoalWildcard) ? numMoved + Math.min(height, this.states[0].length - numMoved) :
+                    numMoved + (isGoalRobotMoved ? 0 : 1) + Math.min(height - Math.max(minMovesToGoal, 1),
+                            this.states[0].length - 1 - numMoved + (isGoalRobotMoved ? 1 : 0)));
+            return (maxMoved < this.bestRobotsMoved);
+        } else {
+            return (numMoved + (isGoalRobotMoved ? 0 : 1) > this.bestRobotsMoved);
+        }
+    }
+    
+    
+    
     private void buildSolution(final int depth) {
-        final Solution tmpSolution = new Solution(this.board);
-        int[] state0 = this.states[0].clone();
-        swapGoalLast(state0);
+        //encode the moves directly from the states on the stack, without cloning any state
         for (int i = 0;  i < depth;  ++i) {
-            final int[] state1 = this.states[i + 1].clone();
-            swapGoalLast(state1);
-            tmpSolution.add(new Move(this.board, state0, state1, i));
-            state0 = state1;
+            final int[] state0 = this.states[i], state1 = this.states[i + 1];
+            int robo = 0;
+            while (state0[robo] == state1[robo]) { ++robo; }
+            this.solutionMoves[i] = Move.encode(this.swapGoalLast(robo), state0[robo], state1[robo],
+                    this.board.getDirection(state1[robo] - state0[robo]));
+        }
+        final Solution tmpSolution = new Solution(this.board, this.solutionMoves, depth);
+        this.addSolution(tmpSolution.finish(this.instrumentation));
+        if (true == this.isRobotsMovedPruning) {
+            final int numRobotsMoved = tmpSolution.getNumRobotsMoved();
+            if ((0 == this.bestRobotsMoved) || ((SOLUTION_MODE.MAXIMUM == this.optSolutionMode) ?
+                    (numRobotsMoved > this.bestRobotsMoved) : (numRobotsMoved < this.bestRobotsMoved))) {
+                this.bestRobotsMoved = numRobotsMoved;
+            }
+        }
+        if (true == this.instrumentation.isEnabled(Instrumentation.Level.SUMMARY)) {
+            this.instrumentation.message(Instrumentation.Level.SUMMARY,
+                    tmpSolution.toMovelistString() + " " + tmpSolution.toString() + " finalState=" + this.stateString(states[depth]));
+        }
+        if ((null != this.optSolutionCollector) && (true == this.optSolutionCollector.isComplete())) {
+            throw new SearchComplete();
+        }
+    }
+    
+    
+    
+    // thrown by buildSolution to leave the recursion when the solution collector doesn't need any more solutions.
+    // it's unchecked and caught only in execute(), so that it can't be mistaken for an interruption of the thread.
+    private static final class SearchComplete extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;    //no stack trace needed
         }
-        this.lastResultSolutions.add(tmpSolution.finish());
-        System.out.println(tmpSolution.toMovelistString() + " " + tmpSolution.toString() + " finalState=" + this.stateString(states[depth]));
     }
     
     
     
     private class KnownStates {
+        private static final int MIGRATION_CHECK_MASK = (1 << 16) - 1;
+        private final KeyDepthMapPolicy policy;
         private final AllKeys allKeys;
         
-        public KnownStates() {
-            this.allKeys = ((true == isBoardStateInt32) ? new AllKeysInt() : new AllKeysLong());
+        public KnownStates(final int numMaps) {
+            this.policy = KeyDepthMapFactory.newPolicy(board, numMaps);
+            this.allKeys = ((true == isBoardStateInt32) ? new AllKeysInt() :
+                    ((true == isBoardStateLong64) ? new AllKeysLong() : new AllKeysLong128()));
         }
         
         //store the unique keys of all known states
         private abstract class AllKeys {
-            protected final KeyDepthMap theMap;
+            protected KeyDepthMap theMap;
             
             protected AllKeys() {
-                this.theMap = KeyDepthMapFactory.newInstance(board);
+                this.theMap = policy.createMap();
             }
             
             public abstract boolean add(final int[] state, final int depth);
@@ -450,13 +1167,58 @@ public class SolverIDDFS extends Solver {
                 return this.theMap.putIfGreater(key, depth);
             }
         }
+        //store the unique keys of all known states in 128-bit (two longs)
+        //supports 6 to 8 robots on board sizes larger than 256
+        private final class AllKeysLong128 extends AllKeys {
+            private final KeyMakerLong128 keyMaker = KeyMakerLong128.createInstance(board.getNumRobots(), board.sizeNumBits, isBoardGoalWildcard);
+            public AllKeysLong128() {
+                super();
+            }
+            @Override
+            public final boolean add(final int[] state, final int depth) {
+                final long keyLow = this.keyMaker.run(state);
+                return this.theMap.putIfGreater(keyLow, this.keyMaker.getKeyHigh(), depth);
+            }
+        }
 
         public boolean add(int[] state, int depth) {
-            return this.allKeys.add(state, depth);
+            if (true == this.allKeys.add(state, depth)) {
+                if (0 == (++statistics.putIfGreaterHits & MIGRATION_CHECK_MASK)) {
+                    this.migrateIfNeeded();
+                }
+                return true;
+            }
+            ++statistics.putIfGreaterMisses;
+            ++statistics.prunesKnownStates;
+            return false;
+        }
+        public final void iterationFinished(final long statesPrevious, final long statesLast) {
+            this.policy.iterationFinished(statesPrevious, statesLast);
+            this.migrateIfNeeded();
+        }
+        private void migrateIfNeeded() {
+            if (true == this.policy.isMigrationNeeded(this.allKeys.theMap)) {
+                final KeyDepthMap oldMap = this.allKeys.theMap;
+                this.allKeys.theMap = this.policy.migrate(oldMap);
+                if (true == instrumentation.isEnabled(Instrumentation.Level.PER_DEPTH)) {
+                    instrumentation.message(Instrumentation.Level.PER_DEPTH, "iddfs:  migrated knownStates from " +
+                            oldMap.getClass().getSimpleName() + " to " + this.allKeys.theMap.getClass().getSimpleName() +
+                            " size=" + oldMap.size() + " expectedStates=" + this.policy.getExpectedStates());
+                }
+            }
         }
         public final int size() {
             return this.allKeys.theMap.size();
         }
+        public final KeyDepthMapFlat getFlatMap() {
+            return ((this.allKeys.theMap instanceof KeyDepthMapFlat) ? (KeyDepthMapFlat)this.allKeys.theMap : null);
+        }
+        public final void release() {
+            KeyDepthMapFactory.release(this.allKeys.theMap, board);
+        }
+        public final long getBytesAllocated() {
+            return this.allKeys.getBytesAllocated();
+        }
         public final int getMegaBytesAllocated() {
             return (int)((this.allKeys.getBytesAllocated() + (1 << 20) - 1) >> 20);
         }
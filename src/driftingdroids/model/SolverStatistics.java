@@ -0,0 +1,160 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+
+
+/**
+ * Counters of the last run of a <code>Solver</code>.
+ * <p>
+ * The counters are updated by the solver thread without synchronization.
+ * Read them after <code>Solver.execute()</code> has returned,
+ * or accept slightly stale values while the solver is still running.
+ */
+public final class SolverStatistics implements SolverStatisticsMBean {
+
+    long[] nodesExpanded = new long[256];   //index: depth of the state that was expanded
+    long putIfGreaterHits;                  //KeyDepthMap.putIfGreater returned true: new or deeper state stored
+    long putIfGreaterMisses;                //KeyDepthMap.putIfGreater returned false: state already known
+    long prunesMinimumMoves;                //node not expanded because the goal can't be reached in time
+    long prunesKnownStates;                 //child not expanded because it's already known
+    long prunesRobotsMoved;                 //node not expanded because it can't reach the robots moved of the best solution
+    long nanoStart, nanoEnd;
+
+
+
+    final void reset() {
+        Arrays.fill(this.nodesExpanded, 0);
+        this.putIfGreaterHits = 0;
+        this.putIfGreaterMisses = 0;
+        this.prunesMinimumMoves = 0;
+        this.prunesKnownStates = 0;
+        this.prunesRobotsMoved = 0;
+        this.nanoStart = System.nanoTime();
+        this.nanoEnd = 0;
+    }
+
+    final void finish() {
+        this.nanoEnd = System.nanoTime();
+    }
+
+    final void addNodesExpanded(final int depth, final long count) {
+        if (depth >= this.nodesExpanded.length) {
+            this.nodesExpanded = Arrays.copyOf(this.nodesExpanded, Math.max(depth + 1, this.nodesExpanded.length << 1));
+        }
+        this.nodesExpanded[depth] += count;
+    }
+
+
+
+    /**
+     * registers this object at the platform MBean server.
+     * @param name the value of the "name" key property, for example the name of the solver thread
+     * @return the ObjectName that can be used to unregister the MBean
+     * @throws JMException if the registration failed
+     */
+    public ObjectName registerMBean(final String name) throws JMException {
+        final ObjectName objectName = new ObjectName("driftingdroids:type=SolverStatistics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        return objectName;
+    }
+
+    public static void unregisterMBean(final ObjectName objectName) throws JMException {
+        ManagementFactory.getPlatformMBeanServer().unregisterMBean(objectName);
+    }
+
+
+
+    @Override
+    public long[] getNodesExpandedPerDepth() {
+        int maxDepth = this.nodesExpanded.length;
+        while ((maxDepth > 0) && (0 == this.nodesExpanded[maxDepth - 1])) {
+            --maxDepth;
+        }
+        return Arrays.copyOf(this.nodesExpanded, maxDepth);
+    }
+
+    public long getNodesExpanded(final int depth) {
+        return (depth < this.nodesExpanded.length ? this.nodesExpanded[depth] : 0);
+    }
+
+    @Override
+    public long getNodesExpanded() {
+        long result = 0;
+        for (final long n : this.nodesExpanded) {
+            result += n;
+        }
+        return result;
+    }
+
+    @Override
+    public long getPutIfGreaterHits() {
+        return this.putIfGreaterHits;
+    }
+
+    @Override
+    public long getPutIfGreaterMisses() {
+        return this.putIfGreaterMisses;
+    }
+
+    @Override
+    public long getPrunesMinimumMoves() {
+        return this.prunesMinimumMoves;
+    }
+
+    @Override
+    public long getPrunesKnownStates() {
+        return this.prunesKnownStates;
+    }
+
+    @Override
+    public long getPrunesRobotsMoved() {
+        return this.prunesRobotsMoved;
+    }
+
+    @Override
+    public long getNanoSeconds() {
+        return (0 == this.nanoEnd ? System.nanoTime() : this.nanoEnd) - this.nanoStart;
+    }
+
+    @Override
+    public double getNodesPerSecond() {
+        final long nanos = this.getNanoSeconds();
+        return (nanos <= 0 ? 0.0 : this.getNodesExpanded() * 1e9 / nanos);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder s = new StringBuilder();
+        s.append("nodesExpanded=").append(this.getNodesExpanded());
+        s.append(" ").append(Arrays.toString(this.getNodesExpandedPerDepth()));
+        s.append(", putIfGreater hits=").append(this.putIfGreaterHits);
+        s.append(" misses=").append(this.putIfGreaterMisses);
+        s.append(", prunes minimumMoves=").append(this.prunesMinimumMoves);
+        s.append(" knownStates=").append(this.prunesKnownStates);
+        s.append(" robotsMoved=").append(this.prunesRobotsMoved);
+        s.append(", nodesPerSecond=").append(Math.round(this.getNodesPerSecond()));
+        return s.toString();
+    }
+}
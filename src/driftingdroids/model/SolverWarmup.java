@@ -0,0 +1,70 @@
+/*  DriftingDroids - yet another Ricochet Robots solver program.
+    Copyright (C) 2011-2014 Michael Henke
+
+    This program is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    This program is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with this program.  If not, see <http://www.gnu.org/licenses/>.
+*/
+
+package driftingdroids.model;
+
+
+
+/**
+ * Solves a small set of easy puzzles, so that the JVM loads all classes and
+ * compiles the hot methods of the solver before the first "real" puzzle is solved.
+ * <p>
+ * The puzzles cover 3, 4 and 5 robots (<tt>int</tt> and <tt>long</tt> keys),
+ * wildcard goals and the option "no rebound moves", that is all variants of
+ * the IDDFS search loops. The same set is used to create the class data sharing
+ * archive (see buildcds.sh).
+ */
+public final class SolverWarmup {
+
+    private static final String[] GAME_IDS = {
+        "7E9C+41+247C7BD9+AB",
+        "E8B9+41+C0A32542+42",
+        "D0E3+41+D98510E5+BD",
+        "1CEF+53+F766834E74+6B",
+        "5AC7+50+27630D9C35+1C",
+        "F1AC+31+F2AE09+D6",
+        "2F94+32+1FAE85+25",
+        "A03D+4F+2E21BD0F+A8",
+        "E8DF+5F+2E21BD0F7F+A7"
+    };
+
+    private SolverWarmup() { }
+
+
+
+    /**
+     * Solves the puzzles of the warm-up set until all of them are solved
+     * or the time limit is reached.
+     *
+     * @param maxMillis time limit in milliseconds
+     * @return number of puzzles solved
+     * @throws InterruptedException if the current thread was interrupted
+     */
+    public static int run(final long maxMillis) throws InterruptedException {
+        final long endNanos = System.nanoTime() + maxMillis * 1000000L;
+        int solved = 0;
+        for (int i = 0;  (i < GAME_IDS.length) && (System.nanoTime() < endNanos);  ++i) {
+            final Board board = Board.createBoardGameID(GAME_IDS[i]);
+            final Solver solver = Solver.createInstance(board);
+            solver.setInstrumentation(Instrumentation.NONE);
+            solver.setOptionAllowRebounds(0 != (i & 1));
+            solver.execute();
+            ++solved;
+        }
+        return solved;
+    }
+}
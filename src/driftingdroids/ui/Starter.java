@@ -17,6 +17,13 @@
 
 package driftingdroids.ui;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
 import java.lang.reflect.InvocationTargetException;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
@@ -24,15 +31,19 @@ import java.util.Date;
 import java.util.List;
 
 import driftingdroids.model.Board;
+import driftingdroids.model.Instrumentation;
 import driftingdroids.model.KeyDepthMap;
 import driftingdroids.model.KeyDepthMapFactory;
+import driftingdroids.model.KeyDepthMapHashTable;
 import driftingdroids.model.KeyDepthMapTrieGeneric;
 import driftingdroids.model.KeyDepthMapTrieSpecial;
 import driftingdroids.model.KeyMakerInt;
 import driftingdroids.model.KeyMakerLong;
+import driftingdroids.model.PuzzleGenerator;
 import driftingdroids.model.Solution;
 import driftingdroids.model.Solver;
 import driftingdroids.model.SolverIDDFS;
+import driftingdroids.model.SolverWarmup;
 
 
 
@@ -40,6 +51,11 @@ import driftingdroids.model.SolverIDDFS;
 public class Starter {
     
     public static void main(String[] args) throws InterruptedException, InvocationTargetException {
+        KeyDepthMapFactory.setMemoryCap(Runtime.getRuntime().maxMemory() / 2);
+        if (0 < args.length) {
+            runCommandLine(args);
+            return;
+        }
         new SwingGUI("DriftingDroids 1.3.4 (2014-10-05)");
 //        runTestRandom1000();
 //        runTestKeyDepthMap();
@@ -48,6 +64,100 @@ public class Starter {
     }
     
     
+    //headless mode:  Starter [-warmup] gameID...
+    //solves the games specified by their game IDs and prints the best solution of each game.
+    //option -warmup solves the small set of puzzles of SolverWarmup first.
+    //headless mode:  Starter -generate gameID minMoves numPuzzles corpusFile [threads]
+    //generates puzzles on the board of gameID, see runGenerator.
+    private static void runCommandLine(String[] args) throws InterruptedException {
+        if ("-generate".equals(args[0])) {
+            runGenerator(args);
+            return;
+        }
+        for (String arg : args) {
+            if ("-warmup".equals(arg)) {
+                final long startNanos = System.nanoTime();
+                final int solved = SolverWarmup.run(WARMUP_MILLIS);
+                System.out.println("warmup: " + solved + " puzzles solved in " + (System.nanoTime() - startNanos) / 1000000L + "ms");
+            } else {
+                final Board board = Board.createBoardGameID(arg);
+                if (null == board) {
+                    System.out.println(arg + "  invalid game ID");
+                    continue;
+                }
+                final Solver solver = Solver.createInstance(board);
+                final Solution solution = solver.execute().get(0);
+                System.out.println(arg + "  " + solution.toMovelistString() + "  " + solution.toString() +
+                        "  " + solver.getSolutionMilliSeconds() + "ms");
+            }
+        }
+    }
+    private static final long WARMUP_MILLIS = 2000;
+    
+    
+    //appends puzzles of at least minMoves moves to the corpus file (lines "gameID TAB moves").
+    //the puzzles that are already in the corpus file are used as seeds and are not written again.
+    private static void runGenerator(String[] args) throws InterruptedException {
+        final String usage = "usage: Starter -generate gameID minMoves numPuzzles corpusFile [threads]";
+        if (args.length < 5) {
+            System.out.println(usage);
+            return;
+        }
+        final Board board = Board.createBoardGameID(args[1]);
+        if (null == board) {
+            System.out.println(args[1] + "  invalid game ID");
+            return;
+        }
+        final int minMoves, numPuzzles, threads;
+        try {
+            minMoves = Integer.parseInt(args[2]);
+            numPuzzles = Integer.parseInt(args[3]);
+            threads = (args.length > 5 ? Integer.parseInt(args[5]) : Runtime.getRuntime().availableProcessors());
+        } catch (NumberFormatException e) {
+            System.out.println(usage);
+            return;
+        }
+        if ((minMoves < 1) || (numPuzzles < 1) || (threads < 1)) {
+            System.out.println(usage);
+            return;
+        }
+        final File corpusFile = new File(args[4]);
+        KeyDepthMapFactory.setMemoryCap(Runtime.getRuntime().maxMemory() / 2 / threads);
+        final PuzzleGenerator generator = new PuzzleGenerator(board, minMoves);
+        generator.setOptionThreads(threads);
+        generator.setInstrumentation(Instrumentation.createConsole(Instrumentation.Level.SUMMARY));
+        final long startNanos = System.nanoTime();
+        try {
+            int numSeeds = 0;
+            if (true == corpusFile.exists()) {
+                final BufferedReader reader = new BufferedReader(new FileReader(corpusFile));
+                try {
+                    for (String line = reader.readLine();  null != line;  line = reader.readLine()) {
+                        final String gameID = line.trim().split("\\s+")[0];
+                        if ((0 < gameID.length()) && (true == generator.addSeed(gameID))) {
+                            ++numSeeds;
+                        }
+                    }
+                } finally {
+                    reader.close();
+                }
+            }
+            System.out.println("generate: " + numPuzzles + " puzzles of at least " + minMoves + " moves, " +
+                    threads + " threads, " + numSeeds + " seeds from " + corpusFile);
+            final Writer writer = new BufferedWriter(new FileWriter(corpusFile, true));
+            try {
+                final int generated = generator.run(numPuzzles, 0, writer);
+                System.out.println("generate: " + generated + " puzzles in " + (System.nanoTime() - startNanos) / 1000000L + "ms, " +
+                        generator.getNumSamples() + " samples, moves histogram " + Arrays.toString(generator.getMovesHistogram()));
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            System.out.println(corpusFile + "  " + e.toString());
+        }
+    }
+    
+    
     @SuppressWarnings("unused")
     private static void runTestRandom1000() throws InterruptedException {
         final Date startDate = new Date();
@@ -104,7 +214,7 @@ public class Starter {
 //        final Board board = Board.createBoardRandom(5);
         final Board board = Board.createBoardGameID("0765+42+2E21BD0F+93");
         
-        System.err.println("GameID\t#Sol\t#Mov\tmsGnrc\tmsSpcl\tMBgnrc\tMBspcl");
+        System.err.println("GameID\t#Sol\t#Mov\tmsGnrc\tmsSpcl\tmsHash\tMBgnrc\tMBspcl\tMBhash\t#States\tB/Sgnrc\tB/Sspcl\tB/Shash");
         for(;;) {
             board.setRobotsRandom();
 //            board.setGoalRandom();
@@ -119,15 +229,27 @@ public class Starter {
             final SolverIDDFS solverSpecial = (SolverIDDFS)Solver.createInstance(board);
             final List<Solution> solutionsSpecial = solverSpecial.execute();
             
+            KeyDepthMapFactory.setDefaultClass(KeyDepthMapHashTable.class);
+            final SolverIDDFS solverHash = (SolverIDDFS)Solver.createInstance(board);
+            final List<Solution> solutionsHash = solverHash.execute();
+            
+            //all maps store the same states, but only the hash table counts them exactly
+            final double numStates = Math.max(1, solverHash.getSolutionStoredStates());
             sb.append(solutionsGeneric.size()).append('\t');
             sb.append(solutionsGeneric.get(0).size()).append('\t');
             sb.append(solverGeneric.getSolutionMilliSeconds()).append('\t');
             sb.append(solverSpecial.getSolutionMilliSeconds()).append('\t');
+            sb.append(solverHash.getSolutionMilliSeconds()).append('\t');
             sb.append(solverGeneric.getSolutionMemoryMegabytes()).append('\t');
             sb.append(solverSpecial.getSolutionMemoryMegabytes()).append('\t');
+            sb.append(solverHash.getSolutionMemoryMegabytes()).append('\t');
+            sb.append(solverHash.getSolutionStoredStates()).append('\t');
+            sb.append(Math.round(10.0 * ((long)solverGeneric.getSolutionMemoryMegabytes() << 20) / numStates) / 10d).append('\t');
+            sb.append(Math.round(10.0 * ((long)solverSpecial.getSolutionMemoryMegabytes() << 20) / numStates) / 10d).append('\t');
+            sb.append(Math.round(10.0 * ((long)solverHash.getSolutionMemoryMegabytes() << 20) / numStates) / 10d).append('\t');
             System.err.println(sb);
             
-            if (!solutionsGeneric.equals(solutionsSpecial)) {
+            if (!solutionsGeneric.equals(solutionsSpecial) || !solutionsGeneric.equals(solutionsHash)) {
                 System.err.println("solutions are not equal!");
                 System.out.println("solutions are not equal!");
                 break;
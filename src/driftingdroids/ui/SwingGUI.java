@@ -115,7 +115,10 @@ public class SwingGUI implements ActionListener {
         new Color(99, 245, 99), //Color.GREEN,
         new Color(99, 99, 245), //Color.BLUE,
         new Color(245, 245, 99),//Color.YELLOW,
-        new Color(245, 245, 245) //light grey
+        new Color(245, 245, 245),//light grey
+        new Color(200, 99, 245),//purple
+        new Color(245, 170, 70),//orange
+        new Color(99, 235, 235) //cyan
     };
 
     private static final int ICON_SIZE = 29;
@@ -479,7 +482,7 @@ public class SwingGUI implements ActionListener {
             this.jlistQuadrants[i] = jl;
         }
         
-        final String[] strRobots = { "1", "2", "3", "4", "5" };
+        final String[] strRobots = { "1", "2", "3", "4", "5", "6", "7", "8" };
         this.jcomboRobots.setModel(new DefaultComboBoxModel(strRobots));
         this.jcomboRobots.setEditable(false);
         this.jcomboRobots.setActionCommand(AC_BOARD_ROBOTS);
@@ -1050,7 +1053,7 @@ public class SwingGUI implements ActionListener {
     
     
     private void refreshBoard(final Move step) {
-        for (int pos : step.pathMap.keySet()) {
+        for (int pos : step.getPathPositions()) {
             this.boardCells[pos].repaint();
         }
     }
@@ -1283,21 +1286,21 @@ public class SwingGUI implements ActionListener {
                 final int pathWidth = Math.min(hWallWidth, vWallWidth);
                 g2d.setStroke(new BasicStroke(pathWidth, BasicStroke.CAP_SQUARE, BasicStroke.JOIN_MITER));
                 for (Move step : moves) {
-                    final Integer path = step.pathMap.get(Integer.valueOf(this.boardPosition));
-                    if (null != path) {
+                    final int path = step.getPath(this.boardPosition);
+                    if (0 != path) {
                         g2d.setColor(COL_ROBOT[step.robotNumber]);
                         final int halfHeight = (height >> 1) + ((step.robotNumber - 2) * pathWidth);
                         final int halfWidth = (width >> 1) + ((step.robotNumber - 2) * pathWidth);
-                        if ((path.intValue() & Move.PATH_NORTH) != 0) {
+                        if ((path & Move.PATH_NORTH) != 0) {
                             g2d.drawLine(halfWidth, 0, halfWidth, halfHeight);
                         }
-                        if ((path.intValue() & Move.PATH_SOUTH) != 0) {
+                        if ((path & Move.PATH_SOUTH) != 0) {
                             g2d.drawLine(halfWidth, halfHeight, halfWidth, height-1);
                         }
-                        if ((path.intValue() & Move.PATH_EAST) != 0) {
+                        if ((path & Move.PATH_EAST) != 0) {
                             g2d.drawLine(halfWidth, halfHeight, width-1, halfHeight);
                         }
-                        if ((path.intValue() & Move.PATH_WEST) != 0) {
+                        if ((path & Move.PATH_WEST) != 0) {
                             g2d.drawLine(0, halfHeight, halfWidth, halfHeight);
                         }
                     }